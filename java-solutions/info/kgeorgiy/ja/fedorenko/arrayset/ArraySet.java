@@ -1,57 +1,281 @@
 package info.kgeorgiy.ja.fedorenko.arrayset;
 
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
+// a view is the range [offset, offset + sz) of a sorted array shared with the set it came from, read backwards
+// when reversed, so any chain of views costs the same as the set itself
 public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
-    private final ReversibleList<T> coll;
-    private final Comparator<? super T> cmp;
+    private static final ArraySet<?> EMPTY = new ArraySet<>(new Object[0], null);
+
+    private final Object[] elements;
+    private final int offset;
     private final int sz;
-    private final Predicate<Integer> isOutOfBounds = (i) -> i < 0 || i >= size();
+    private final boolean reversed;
+    private final Comparator<? super T> cmp;
+    // optional lookup layout of a whole set or its descending set, views fall back to binary search
+    private final EytzingerIndex<T> index;
+    // shared by all empty views of a set with a comparator, the natural order has the single EMPTY
+    private ArraySet<T> empty;
 
     private enum Strictness { LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL, }
 
-    public ArraySet() { this(List.of(), null); }
+    private enum Operation { UNION, INTERSECTION, DIFFERENCE }
+
+    // below this, splitting the sort across threads costs more than it saves
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+    // elements per part of a parallel merge
+    private static final int PARALLEL_MERGE_THRESHOLD = 1 << 16;
+    // an intersection gallops through the larger range once it is this many times larger than the other
+    private static final int GALLOP_RATIO = 16;
 
-    public ArraySet(Comparator<? super T> comparator) { this(List.of(), comparator); }
+    public ArraySet() { this(new Object[0], null); }
+
+    public ArraySet(Comparator<? super T> comparator) { this(new Object[0], comparator); }
 
     public ArraySet(Collection<T> collection) { this(collection, null); }
 
+    // sorted input, including a SortedSet with the same comparator, passes the first check of sortedDistinct
     public ArraySet(Collection<T> collection, Comparator<? super T> comparator) {
-        this(List.copyOf(
-                (collection instanceof SortedSet<T> && ((SortedSet<T>) collection).comparator() == comparator)
-                        ? collection
-                        : new TreeSet<>(comparator) {{ this.addAll(collection); }}
-                ), comparator);
+        this(sortedDistinct(collection.toArray(), comparator), comparator);
+    }
+
+    private ArraySet(Object[] sorted, Comparator<? super T> comparator) {
+        this(sorted, 0, sorted.length, false, comparator, null);
+    }
+
+    private ArraySet(Object[] elements, int offset, int size, boolean reversed, Comparator<? super T> comparator,
+                     EytzingerIndex<T> index) {
+        this.elements = elements;
+        this.offset = offset;
+        this.sz = size;
+        this.reversed = reversed;
+        this.cmp = comparator;
+        this.index = index;
+    }
+
+    // elements that are already sorted and distinct, which is checked in one pass instead of sorting them
+    public static <T> ArraySet<T> fromSorted(Collection<T> collection, Comparator<? super T> comparator) {
+        final Object[] elements = collection.toArray();
+        final Comparator<? super T> order = order(comparator);
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] == null) throw new NullPointerException("Set cannot contain null");
+            if (i > 0 && order.compare(element(elements, i - 1), element(elements, i)) >= 0) {
+                throw new IllegalArgumentException("Elements are not sorted and distinct at index " + i);
+            }
+        }
+        return new ArraySet<>(elements, comparator);
+    }
+
+    public static <T> Builder<T> builder(Comparator<? super T> comparator) { return new Builder<>(comparator); }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Comparator<? super T> order(Comparator<? super T> comparator) {
+        return comparator == null ? (Comparator<? super T>) Comparator.naturalOrder() : comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T element(Object[] elements, int i) { return (T) elements[i]; }
+
+    // sorts the elements in place unless they already are, then keeps the first of every run of equal ones,
+    // as adding them to a TreeSet in turn would
+    private static <T> Object[] sortedDistinct(Object[] elements, Comparator<? super T> comparator) {
+        final Comparator<? super T> order = order(comparator);
+        final int n = elements.length;
+        boolean sorted = true, distinct = true;
+        for (int i = 0; i < n; i++) {
+            if (elements[i] == null) throw new NullPointerException("Set cannot contain null");
+            if (i > 0 && sorted) {
+                final int c = order.compare(element(elements, i - 1), element(elements, i));
+                sorted = c <= 0;
+                distinct &= c != 0;
+            }
+        }
+        if (sorted && distinct) return elements;
+
+        if (!sorted) {
+            @SuppressWarnings("unchecked") final Comparator<Object> objects = (Comparator<Object>) order;
+            if (n >= PARALLEL_SORT_THRESHOLD) {
+                Arrays.parallelSort(elements, 0, n, objects);
+            } else {
+                Arrays.sort(elements, 0, n, objects);
+            }
+        }
+
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || order.compare(element(elements, m - 1), element(elements, i)) != 0) elements[m++] = elements[i];
+        }
+        return m == n ? elements : Arrays.copyOf(elements, m);
+    }
+
+    // the same set with its element lookups served from a copy of the references in Eytzinger order,
+    // which pays off for sets too large for the cache
+    public static <T> ArraySet<T> eytzinger(Collection<T> collection, Comparator<? super T> comparator) {
+        final ArraySet<T> sorted = new ArraySet<>(collection, comparator);
+        return new ArraySet<>(sorted.elements, 0, sorted.sz, false, comparator, new EytzingerIndex<>(sorted.elements, comparator));
+    }
+
+    // set algebra by linear merge of two sets ordered alike; equal elements are taken from the first set
+    public static <T> ArraySet<T> union(ArraySet<T> a, ArraySet<T> b) { return combine(a, b, Operation.UNION); }
+
+    public static <T> ArraySet<T> intersection(ArraySet<T> a, ArraySet<T> b) { return combine(a, b, Operation.INTERSECTION); }
+
+    public static <T> ArraySet<T> difference(ArraySet<T> a, ArraySet<T> b) { return combine(a, b, Operation.DIFFERENCE); }
+
+    // large inputs are cut at evenly spaced elements of the larger set, each part is merged on its own
+    private static <T> ArraySet<T> combine(ArraySet<T> a, ArraySet<T> b, Operation op) {
+        if (!Objects.equals(a.cmp, b.cmp)) throw new IllegalArgumentException("Sets are ordered differently");
+
+        final int parts = (int) Math.max(1, Math.min(4 * ForkJoinPool.getCommonPoolParallelism(),
+                ((long) a.sz + b.sz) / PARALLEL_MERGE_THRESHOLD));
+        final ArraySet<T> larger = a.sz >= b.sz ? a : b;
+        final int[] aCut = new int[parts + 1];
+        final int[] bCut = new int[parts + 1];
+        for (int i = 1; i < parts; i++) {
+            final T key = larger.get((int) ((long) larger.sz * i / parts));
+            aCut[i] = a.gallop(key, 0, a.sz);
+            bCut[i] = b.gallop(key, 0, b.sz);
+        }
+        aCut[parts] = a.sz;
+        bCut[parts] = b.sz;
+
+        final Object[][] results = new Object[parts][];
+        final IntStream indices = IntStream.range(0, parts);
+        (parts > 1 ? indices.parallel() : indices)
+                .forEach(i -> results[i] = merge(a, aCut[i], aCut[i + 1], b, bCut[i], bCut[i + 1], op));
+
+        if (parts == 1) return new ArraySet<>(results[0], a.cmp);
+        final Object[] merged = new Object[Arrays.stream(results).mapToInt(part -> part.length).sum()];
+        int n = 0;
+        for (Object[] part : results) {
+            System.arraycopy(part, 0, merged, n, part.length);
+            n += part.length;
+        }
+        return new ArraySet<>(merged, a.cmp);
+    }
+
+    private static <T> Object[] merge(ArraySet<T> a, int i, int aEnd, ArraySet<T> b, int j, int bEnd, Operation op) {
+        final int na = aEnd - i, nb = bEnd - j;
+        if (op == Operation.INTERSECTION && (long) Math.min(na, nb) * GALLOP_RATIO < Math.max(na, nb)) {
+            return gallopingIntersection(a, i, aEnd, b, j, bEnd);
+        }
+
+        final Object[] out = new Object[switch (op) {
+            case UNION -> na + nb;
+            case INTERSECTION -> Math.min(na, nb);
+            case DIFFERENCE -> na;
+        }];
+        int n = 0;
+        while (i < aEnd && j < bEnd) {
+            final T x = a.get(i), y = b.get(j);
+            final int c = a.compare(x, y);
+            if (c < 0) {
+                if (op != Operation.INTERSECTION) out[n++] = x;
+                i++;
+            } else if (c > 0) {
+                if (op == Operation.UNION) out[n++] = y;
+                j++;
+            } else {
+                if (op != Operation.DIFFERENCE) out[n++] = x;
+                i++;
+                j++;
+            }
+        }
+        if (op != Operation.INTERSECTION) {
+            while (i < aEnd) out[n++] = a.get(i++);
+        }
+        if (op == Operation.UNION) {
+            while (j < bEnd) out[n++] = b.get(j++);
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
     }
 
-    private ArraySet(List<T> collection, Comparator<? super T> comparator) {
-        this(new ReversibleList<>(collection, false), comparator);
+    // every element of the smaller range is looked up from where the previous one was found
+    private static <T> Object[] gallopingIntersection(ArraySet<T> a, int i, int aEnd, ArraySet<T> b, int j, int bEnd) {
+        final boolean aSmaller = aEnd - i <= bEnd - j;
+        final ArraySet<T> small = aSmaller ? a : b, large = aSmaller ? b : a;
+        final int smallEnd = aSmaller ? aEnd : bEnd, largeEnd = aSmaller ? bEnd : aEnd;
+        int p = aSmaller ? j : i;
+
+        final Object[] out = new Object[smallEnd - (aSmaller ? i : j)];
+        int n = 0;
+        for (int k = aSmaller ? i : j; k < smallEnd && p < largeEnd; k++) {
+            final T key = small.get(k);
+            p = large.gallop(key, p, largeEnd);
+            if (p < largeEnd && large.compare(large.get(p), key) == 0) {
+                out[n++] = aSmaller ? key : large.get(p);
+                p++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
     }
 
-    private ArraySet(ReversibleList<T> collection, Comparator<? super T> comparator) {
-        coll = collection;
-        cmp = comparator;
-        sz = collection.size();
+    // the first position from the given one whose element is not below the key: steps of growing length find
+    // a range holding it, a binary search finishes; costs the log of the distance rather than of the size
+    private int gallop(T key, int from, int end) {
+        int lo = from, hi = from, step = 1;
+        while (hi < end && compare(get(hi), key) < 0) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, end);
+
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (compare(get(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
     }
 
     @Override
     public Comparator<? super T> comparator() { return cmp; }
 
     @Override
-    public T lower(T t) { return getExactElement(t, Strictness.LESS); }
+    public T lower(T t) { return index != null ? index.lower(t) : getExactElement(t, Strictness.LESS); }
 
     @Override
-    public T floor(T t) { return getExactElement(t, Strictness.LESS_OR_EQUAL); }
+    public T floor(T t) { return index != null ? index.floor(t) : getExactElement(t, Strictness.LESS_OR_EQUAL); }
 
     @Override
-    public T ceiling(T t) { return getExactElement(t, Strictness.GREATER_OR_EQUAL); }
+    public T ceiling(T t) { return index != null ? index.ceiling(t) : getExactElement(t, Strictness.GREATER_OR_EQUAL); }
 
     @Override
-    public T higher(T t) { return getExactElement(t, Strictness.GREATER); }
+    public T higher(T t) { return index != null ? index.higher(t) : getExactElement(t, Strictness.GREATER); }
+
+    @SuppressWarnings("unchecked")
+    private T get(int i) { return (T) elements[reversed ? offset + sz - 1 - i : offset + i]; }
+
+    @SuppressWarnings("unchecked")
+    private int compare(T a, T b) { return cmp == null ? ((Comparable<? super T>) a).compareTo(b) : cmp.compare(a, b); }
+
+    // Collections.binarySearch over the positions of this view
+    private int search(T key) {
+        int lo = 0, hi = sz - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int c = compare(get(mid), key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private boolean isOutOfBounds(int i) { return i < 0 || i >= sz; }
 
     private int getExactPosition(T element, Strictness s) {
-        int p = Collections.binarySearch(coll, element, cmp);
+        int p = search(element);
 
         return switch (s) {
             case LESS -> p >= 0 ? (p - 1) : (-p - 2);
@@ -63,7 +287,7 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
 
     private T getExactElement(T element, Strictness s) {
         int p = getExactPosition(element, s);
-        return isOutOfBounds.test(p) ? null : coll.get(p);
+        return isOutOfBounds(p) ? null : get(p);
     }
 
     @Override
@@ -76,19 +300,34 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     public void clear() { throw new UnsupportedOperationException("Set is immutable"); }
 
     @Override
-    public Iterator<T> iterator() { return coll.iterator(); }
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() { return i < sz; }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return get(i++);
+            }
+        };
+    }
 
     @Override
-    public NavigableSet<T> descendingSet() { return new ArraySet<>(coll.reverse(), Collections.reverseOrder(cmp)); }
+    public NavigableSet<T> descendingSet() {
+        return new ArraySet<>(elements, offset, sz, !reversed, Collections.reverseOrder(cmp), index == null ? null : index.reverse());
+    }
 
     @Override
-    public Iterator<T> descendingIterator() { return coll.reverse().iterator(); }
+    public Iterator<T> descendingIterator() { return descendingSet().iterator(); }
 
     @SuppressWarnings("unchecked")
     @Override
     public boolean contains(Object o) {
         if (o != null) {
-            return Collections.binarySearch(coll, (T) o, cmp) >= 0;
+            return index != null ? index.contains((T) o) : search((T) o) >= 0;
         }
 
         return false;
@@ -98,8 +337,16 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
         int p1 = getExactPosition(t, b ? Strictness.GREATER_OR_EQUAL : Strictness.GREATER);
         int p2 = getExactPosition(e1, b1 ? Strictness.LESS_OR_EQUAL : Strictness.LESS);
 
-        if (isOutOfBounds.test(p1) || isOutOfBounds.test(p2)) return new ArraySet<>(cmp);
-        return new ArraySet<>(coll.subList(p1, p2 + 1), cmp);
+        if (isOutOfBounds(p1) || isOutOfBounds(p2) || p1 > p2) return empty();
+        return new ArraySet<>(elements, reversed ? offset + sz - 1 - p2 : offset + p1, p2 - p1 + 1, reversed, cmp, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private NavigableSet<T> empty() {
+        if (cmp == null) return (ArraySet<T>) EMPTY;
+        if (sz == 0) return this;
+        if (empty == null) empty = new ArraySet<>(new Object[0], cmp);
+        return empty;
     }
 
     @SuppressWarnings("unchecked")
@@ -107,19 +354,19 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     public NavigableSet<T> subSet(T t, boolean b, T e1, boolean b1) {
         int test = (cmp == null) ? ((Comparable<T>) t).compareTo(e1) : cmp.compare(t, e1);
         if (test > 0) throw new IllegalArgumentException("fromKey > toKey");
-        if (test == 0 && !b && !b1) return new ArraySet<>(cmp);
+        if (test == 0 && !b && !b1) return empty();
 
         return subSetOrEmpty(t, b, e1, b1);
     }
 
     @Override
     public NavigableSet<T> headSet(T t, boolean b) {
-        return coll.isEmpty() ? new ArraySet<>(cmp) : subSetOrEmpty(first(), true, t, b);
+        return isEmpty() ? empty() : subSetOrEmpty(first(), true, t, b);
     }
 
     @Override
     public NavigableSet<T> tailSet(T t, boolean b) {
-        return coll.isEmpty() ? new ArraySet<>(cmp) : subSetOrEmpty(t, b, last(), true);
+        return isEmpty() ? empty() : subSetOrEmpty(t, b, last(), true);
     }
 
     @Override
@@ -134,17 +381,41 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     @Override
     public T first() {
         checkIfEmpty();
-        return coll.get(0);
+        return get(0);
     }
 
     @Override
     public T last() {
         checkIfEmpty();
-        return coll.get(size() - 1);
+        return get(sz - 1);
     }
 
     @Override
     public int size() { return sz; }
 
-    private void checkIfEmpty() { if (coll.isEmpty()) throw new NoSuchElementException("Collection is empty"); }
-}
\ No newline at end of file
+    private void checkIfEmpty() { if (sz == 0) throw new NoSuchElementException("Collection is empty"); }
+
+    // collects elements in any order and sorts them once on build
+    public static class Builder<T> {
+        private final Comparator<? super T> cmp;
+        private Object[] elements = new Object[16];
+        private int size;
+
+        private Builder(Comparator<? super T> comparator) { cmp = comparator; }
+
+        public Builder<T> add(T element) {
+            if (size == elements.length) elements = Arrays.copyOf(elements, 2 * size);
+            elements[size++] = element;
+            return this;
+        }
+
+        public Builder<T> addAll(Collection<? extends T> collection) {
+            for (T element : collection) {
+                add(element);
+            }
+            return this;
+        }
+
+        public ArraySet<T> build() { return new ArraySet<>(sortedDistinct(Arrays.copyOf(elements, size), cmp), cmp); }
+    }
+}
@@ -0,0 +1,185 @@
+package info.kgeorgiy.ja.fedorenko.arrayset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+// lookup: ns per lookup of binary search against the Eytzinger layout, for random probes that hit about half the time;
+// build: ms per construction from shuffled and sorted input, through a TreeSet as before and directly;
+// algebra: ms per merge of two overlapping sets against a TreeSet copy and retainAll, and of a small set with a large one
+public class ArraySetBenchmark {
+    private static final String USAGE = "Usage: ArraySetBenchmark [lookup|build|algebra] [iterations [size...]]";
+    private static final long[] DEFAULT_SIZES = {1_000, 1_000_000, 100_000_000};
+    private static final long[] DEFAULT_BUILD_SIZES = {1_000, 100_000, 2_000_000};
+    private static final long[] DEFAULT_ALGEBRA_SIZES = {1_000, 100_000, 1_000_000};
+    // elements of the small set intersected with a large one
+    private static final int SKEWED = 100;
+    private static final int PROBES = 1 << 20;
+    // small sets are built repeatedly in a pass, until about this many elements went through
+    private static final int ELEMENTS_PER_PASS = 1 << 20;
+    // a boxed element and its references from the source list, the set and the index
+    private static final long BYTES_PER_ELEMENT = 32;
+
+    private static double measure(Integer[] probes, ToLongFunction<Integer> lookup, int iterations) {
+        long best = Long.MAX_VALUE, sink = 0;
+        for (int it = 0; it <= iterations; it++) {
+            final long start = System.nanoTime();
+            for (Integer probe : probes) {
+                sink += lookup.applyAsLong(probe);
+            }
+            // the first pass only warms up
+            if (it > 0) best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == 42) System.out.print("");
+
+        return (double) best / probes.length;
+    }
+
+    // ms per call, repeating the call within a pass when it handles few elements
+    private static double millis(Supplier<NavigableSet<Integer>> build, int elements, int iterations) {
+        final int repeats = Math.max(1, ELEMENTS_PER_PASS / Math.max(1, elements));
+        long best = Long.MAX_VALUE, sink = 0;
+        for (int it = 0; it <= iterations; it++) {
+            final long start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                sink += build.get().size();
+            }
+            // the first pass only warms up
+            if (it > 0) best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == 42) System.out.print("");
+
+        return best / 1e6 / repeats;
+    }
+
+    private static long value(Integer element) { return element == null ? -1 : element; }
+
+    private static boolean fits(long size) {
+        if (size <= Integer.MAX_VALUE / 2 && size * BYTES_PER_ELEMENT <= Runtime.getRuntime().maxMemory()) return true;
+        System.out.printf("%12d%s%n", size, "    skipped, needs a larger -Xmx");
+        return false;
+    }
+
+    private static List<Integer> evens(int n) {
+        final List<Integer> elements = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            elements.add(2 * i);
+        }
+        return elements;
+    }
+
+    private static void lookup(long[] sizes, int iterations) {
+        System.out.printf("%12s%16s%16s%16s%16s%n", "size", "contains", "eytzinger", "floor", "eytzinger");
+        for (long size : sizes) {
+            if (!fits(size)) continue;
+
+            final int n = (int) size;
+            final List<Integer> elements = evens(n);
+            final NavigableSet<Integer> binary = ArraySet.fromSorted(elements, null);
+            final NavigableSet<Integer> eytzinger = ArraySet.eytzinger(binary, null);
+            elements.clear();
+
+            final Random random = new Random(size);
+            final Integer[] probes = new Integer[PROBES];
+            for (int i = 0; i < probes.length; i++) {
+                probes[i] = random.nextInt(2 * n);
+            }
+
+            System.out.printf("%12d%16.1f%16.1f%16.1f%16.1f%n", size,
+                    measure(probes, p -> binary.contains(p) ? 1 : 0, iterations),
+                    measure(probes, p -> eytzinger.contains(p) ? 1 : 0, iterations),
+                    measure(probes, p -> value(binary.floor(p)), iterations),
+                    measure(probes, p -> value(eytzinger.floor(p)), iterations));
+        }
+        System.out.println("(ns per lookup, best of " + iterations + " passes over " + PROBES + " probes)");
+    }
+
+    // the TreeSet columns are what the constructor did before it sorted an array itself
+    private static void build(long[] sizes, int iterations) {
+        System.out.printf("%12s%16s%16s%16s%16s%n", "size", "shuffled tree", "shuffled", "sorted tree", "sorted");
+        for (long size : sizes) {
+            if (!fits(size)) continue;
+
+            final int n = (int) size;
+            final List<Integer> sorted = evens(n);
+            final List<Integer> shuffled = new ArrayList<>(sorted);
+            Collections.shuffle(shuffled, new Random(size));
+
+            System.out.printf("%12d%16.3f%16.3f%16.3f%16.3f%n", size,
+                    millis(() -> new ArraySet<>(new TreeSet<>(shuffled)), n, iterations),
+                    millis(() -> new ArraySet<>(shuffled), n, iterations),
+                    millis(() -> new ArraySet<>(new TreeSet<>(sorted)), n, iterations),
+                    millis(() -> new ArraySet<>(sorted), n, iterations));
+        }
+        System.out.println("(ms per set, best of " + iterations + " passes, "
+                + Runtime.getRuntime().availableProcessors() + " processors for the parallel sort)");
+    }
+
+    // multiples of 2 and of 3, so that a third of the first set is shared
+    private static void algebra(long[] sizes, int iterations) {
+        System.out.printf("%12s%16s%16s%16s%16s%16s%n", "size", "intersection", "retainAll", "union", "difference", "skewed " + SKEWED);
+        for (long size : sizes) {
+            if (!fits(2 * size)) continue;
+
+            final int n = (int) size;
+            final ArraySet<Integer> a = ArraySet.fromSorted(evens(n), null);
+            final List<Integer> threes = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                threes.add(3 * i);
+            }
+            final ArraySet<Integer> b = ArraySet.fromSorted(threes, null);
+            final List<Integer> spread = new ArrayList<>(SKEWED);
+            for (int i = 0; i < Math.min(SKEWED, n); i++) {
+                spread.add(2 * (int) ((long) n * i / SKEWED));
+            }
+            final ArraySet<Integer> few = ArraySet.fromSorted(spread, null);
+
+            System.out.printf("%12d%16.3f%16.3f%16.3f%16.3f%16.4f%n", size,
+                    millis(() -> ArraySet.intersection(a, b), 2 * n, iterations),
+                    millis(() -> {
+                        final TreeSet<Integer> copy = new TreeSet<>(a);
+                        copy.retainAll(b);
+                        return copy;
+                    }, 2 * n, iterations),
+                    millis(() -> ArraySet.union(a, b), 2 * n, iterations),
+                    millis(() -> ArraySet.difference(a, b), 2 * n, iterations),
+                    millis(() -> ArraySet.intersection(few, a), SKEWED, iterations));
+        }
+        System.out.println("(ms per operation, best of " + iterations + " passes, "
+                + Runtime.getRuntime().availableProcessors() + " processors for the parallel merge)");
+    }
+
+    public static void main(String[] args) {
+        try {
+            final boolean named = args.length > 0 && !args[0].isEmpty() && Character.isLetter(args[0].charAt(0));
+            final String mode = named ? args[0] : "lookup";
+            final int first = named ? 1 : 0;
+
+            final int iterations = args.length > first ? Integer.parseInt(args[first]) : 5;
+            final long[] defaults = switch (mode) {
+                case "lookup" -> DEFAULT_SIZES;
+                case "build" -> DEFAULT_BUILD_SIZES;
+                case "algebra" -> DEFAULT_ALGEBRA_SIZES;
+                default -> throw new IllegalArgumentException("Unknown mode " + mode);
+            };
+            final long[] sizes = new long[args.length > first + 1 ? args.length - first - 1 : defaults.length];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = args.length > first + 1 ? Long.parseLong(args[first + 1 + i]) : defaults[i];
+            }
+
+            switch (mode) {
+                case "lookup" -> lookup(sizes, iterations);
+                case "build" -> build(sizes, iterations);
+                default -> algebra(sizes, iterations);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong arguments were passed: " + e.getMessage());
+            System.err.println(USAGE);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package info.kgeorgiy.ja.fedorenko.arrayset;
+
+import java.util.Comparator;
+
+// sorted elements in breadth-first order of an implicit search tree, children of k at 2k and 2k + 1:
+// the first levels of every search share a few cache lines, and a search never jumps back and forth
+// as a binary search does; only answers element queries, ranks still come from the sorted array
+class EytzingerIndex<T> {
+    private final Object[] tree;
+    private final Comparator<? super T> cmp;
+    // answers for the descending view of the same elements
+    private final boolean reversed;
+
+    EytzingerIndex(Object[] sorted, Comparator<? super T> comparator) {
+        this(new Object[sorted.length + 1], comparator, false);
+        fill(sorted, 0, 1);
+    }
+
+    private EytzingerIndex(Object[] tree, Comparator<? super T> comparator, boolean reversed) {
+        this.tree = tree;
+        this.cmp = comparator;
+        this.reversed = reversed;
+    }
+
+    // in-order traversal of the implicit tree assigns the sorted elements; returns the next unused one
+    private int fill(Object[] sorted, int i, int k) {
+        if (k < tree.length) {
+            i = fill(sorted, i, 2 * k);
+            tree[k] = sorted[i++];
+            i = fill(sorted, i, 2 * k + 1);
+        }
+        return i;
+    }
+
+    public EytzingerIndex<T> reverse() { return new EytzingerIndex<>(tree, cmp, !reversed); }
+
+    @SuppressWarnings("unchecked")
+    private int compare(int k, T key) {
+        final T element = (T) tree[k];
+        return cmp == null ? ((Comparable<? super T>) element).compareTo(key) : cmp.compare(element, key);
+    }
+
+    // the smallest element above the key, or not below it when inclusive: the last node where the search turned left,
+    // found by stripping the trailing right turns and that left turn from the path bits
+    @SuppressWarnings("unchecked")
+    private T successor(T key, boolean inclusive) {
+        int k = 1;
+        while (k < tree.length) {
+            final int c = compare(k, key);
+            k = 2 * k + (c < 0 || c == 0 && !inclusive ? 1 : 0);
+        }
+        k >>= Integer.numberOfTrailingZeros(~k) + 1;
+        return (T) tree[k];
+    }
+
+    // the mirror image: the last node where the search turned right
+    @SuppressWarnings("unchecked")
+    private T predecessor(T key, boolean inclusive) {
+        int k = 1;
+        while (k < tree.length) {
+            final int c = compare(k, key);
+            k = 2 * k + (c < 0 || c == 0 && inclusive ? 1 : 0);
+        }
+        k >>= Integer.numberOfTrailingZeros(k) + 1;
+        return (T) tree[k];
+    }
+
+    public T lower(T key) { return reversed ? successor(key, false) : predecessor(key, false); }
+
+    public T floor(T key) { return reversed ? successor(key, true) : predecessor(key, true); }
+
+    public T ceiling(T key) { return reversed ? predecessor(key, true) : successor(key, true); }
+
+    public T higher(T key) { return reversed ? predecessor(key, false) : successor(key, false); }
+
+    public boolean contains(T key) {
+        int k = 1;
+        while (k < tree.length) {
+            final int c = compare(k, key);
+            if (c == 0) return true;
+            k = 2 * k + (c < 0 ? 1 : 0);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+package info.kgeorgiy.ja.fedorenko.arrayset;
+
+import java.util.*;
+
+// ArraySet of ints in a plain int[]: 4 bytes per element against 20 or more for a reference and an Integer object,
+// and no pointer chasing on a probe; the int overloads never box,
+// and return the given absent value when there is no such element
+public class IntArraySet extends PrimitiveArraySet<Integer> {
+    private static final IntArraySet EMPTY = new IntArraySet(new int[0], 0, 0, false);
+    private static final IntArraySet EMPTY_DESCENDING = new IntArraySet(new int[0], 0, 0, true);
+
+    private final int[] a;
+
+    public IntArraySet() { this(new int[0], 0, 0, false); }
+
+    public IntArraySet(int... elements) { this(distinct(elements.clone()), false); }
+
+    public IntArraySet(Collection<Integer> collection) {
+        this(distinct(collection.stream().mapToInt(Integer::intValue).toArray()), false);
+    }
+
+    private IntArraySet(int[] sorted, boolean descending) { this(sorted, 0, sorted.length, descending); }
+
+    private IntArraySet(int[] array, int from, int to, boolean descending) {
+        super(from, to, descending);
+        a = array;
+    }
+
+    // sorts in place and returns the array trimmed to its distinct elements
+    private static int[] distinct(int[] elements) {
+        Arrays.sort(elements);
+        int n = 0;
+        for (int i = 0; i < elements.length; i++) {
+            if (n == 0 || elements[i] != elements[n - 1]) elements[n++] = elements[i];
+        }
+        return n == elements.length ? elements : Arrays.copyOf(elements, n);
+    }
+
+    @Override
+    protected Integer get(int i) { return a[i]; }
+
+    @Override
+    protected int search(Integer key) { return Arrays.binarySearch(a, from, to, key); }
+
+    @Override
+    protected NavigableSet<Integer> view(int from, int to, boolean descending) { return new IntArraySet(a, from, to, descending); }
+
+    @Override
+    protected NavigableSet<Integer> empty(boolean descending) { return descending ? EMPTY_DESCENDING : EMPTY; }
+
+    public boolean contains(int key) { return Arrays.binarySearch(a, from, to, key) >= 0; }
+
+    @Override
+    public boolean contains(Object o) { return o instanceof Integer i && contains(i.intValue()); }
+
+    public int lowerInt(int key, int absent) { return at(lowerIn(Arrays.binarySearch(a, from, to, key)), absent); }
+
+    public int floorInt(int key, int absent) { return at(floorIn(Arrays.binarySearch(a, from, to, key)), absent); }
+
+    public int ceilingInt(int key, int absent) { return at(ceilingIn(Arrays.binarySearch(a, from, to, key)), absent); }
+
+    public int higherInt(int key, int absent) { return at(higherIn(Arrays.binarySearch(a, from, to, key)), absent); }
+
+    public int firstInt() { return a[firstAt()]; }
+
+    public int lastInt() { return a[lastAt()]; }
+
+    private int at(int i, int absent) { return isOutOfBounds(i) ? absent : a[i]; }
+
+    // the elements in the order of this view
+    public int[] toIntArray() {
+        final int[] result = Arrays.copyOfRange(a, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                final int t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+        }
+        return result;
+    }
+}
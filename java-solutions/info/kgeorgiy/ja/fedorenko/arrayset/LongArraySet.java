@@ -0,0 +1,82 @@
+package info.kgeorgiy.ja.fedorenko.arrayset;
+
+import java.util.*;
+
+// ArraySet of longs in a plain long[]: 8 bytes per element against 20 or more for a reference and a Long object,
+// and no pointer chasing on a probe; the long overloads never box,
+// and return the given absent value when there is no such element
+public class LongArraySet extends PrimitiveArraySet<Long> {
+    private static final LongArraySet EMPTY = new LongArraySet(new long[0], 0, 0, false);
+    private static final LongArraySet EMPTY_DESCENDING = new LongArraySet(new long[0], 0, 0, true);
+
+    private final long[] a;
+
+    public LongArraySet() { this(new long[0], 0, 0, false); }
+
+    public LongArraySet(long... elements) { this(distinct(elements.clone()), false); }
+
+    public LongArraySet(Collection<Long> collection) {
+        this(distinct(collection.stream().mapToLong(Long::longValue).toArray()), false);
+    }
+
+    private LongArraySet(long[] sorted, boolean descending) { this(sorted, 0, sorted.length, descending); }
+
+    private LongArraySet(long[] array, int from, int to, boolean descending) {
+        super(from, to, descending);
+        a = array;
+    }
+
+    // sorts in place and returns the array trimmed to its distinct elements
+    private static long[] distinct(long[] elements) {
+        Arrays.sort(elements);
+        int n = 0;
+        for (int i = 0; i < elements.length; i++) {
+            if (n == 0 || elements[i] != elements[n - 1]) elements[n++] = elements[i];
+        }
+        return n == elements.length ? elements : Arrays.copyOf(elements, n);
+    }
+
+    @Override
+    protected Long get(int i) { return a[i]; }
+
+    @Override
+    protected int search(Long key) { return Arrays.binarySearch(a, from, to, key); }
+
+    @Override
+    protected NavigableSet<Long> view(int from, int to, boolean descending) { return new LongArraySet(a, from, to, descending); }
+
+    @Override
+    protected NavigableSet<Long> empty(boolean descending) { return descending ? EMPTY_DESCENDING : EMPTY; }
+
+    public boolean contains(long key) { return Arrays.binarySearch(a, from, to, key) >= 0; }
+
+    @Override
+    public boolean contains(Object o) { return o instanceof Long l && contains(l.longValue()); }
+
+    public long lowerLong(long key, long absent) { return at(lowerIn(Arrays.binarySearch(a, from, to, key)), absent); }
+
+    public long floorLong(long key, long absent) { return at(floorIn(Arrays.binarySearch(a, from, to, key)), absent); }
+
+    public long ceilingLong(long key, long absent) { return at(ceilingIn(Arrays.binarySearch(a, from, to, key)), absent); }
+
+    public long higherLong(long key, long absent) { return at(higherIn(Arrays.binarySearch(a, from, to, key)), absent); }
+
+    public long firstLong() { return a[firstAt()]; }
+
+    public long lastLong() { return a[lastAt()]; }
+
+    private long at(int i, long absent) { return isOutOfBounds(i) ? absent : a[i]; }
+
+    // the elements in the order of this view
+    public long[] toLongArray() {
+        final long[] result = Arrays.copyOfRange(a, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                final long t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,164 @@
+package info.kgeorgiy.ja.fedorenko.arrayset;
+
+import java.util.*;
+
+// navigation shared by the primitive sets: a view is the index range [from, to) of a sorted array, iterated
+// backwards when descending; positions are array indices, from - 1 and to standing for "no such element"
+abstract class PrimitiveArraySet<T extends Comparable<? super T>> extends AbstractSet<T> implements NavigableSet<T> {
+    protected final int from;
+    protected final int to;
+    protected final boolean descending;
+
+    protected PrimitiveArraySet(int from, int to, boolean descending) {
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    // the element at an array index
+    protected abstract T get(int i);
+
+    // Arrays.binarySearch over [from, to)
+    protected abstract int search(T key);
+
+    protected abstract NavigableSet<T> view(int from, int to, boolean descending);
+
+    // shared empty sets of each direction
+    protected abstract NavigableSet<T> empty(boolean descending);
+
+    // array indices of the neighbours of a key in ascending order, given its binarySearch result
+    protected static int lowerAt(int p) { return p >= 0 ? p - 1 : -p - 2; }
+
+    protected static int floorAt(int p) { return p >= 0 ? p : -p - 2; }
+
+    protected static int ceilingAt(int p) { return p >= 0 ? p : -p - 1; }
+
+    protected static int higherAt(int p) { return p >= 0 ? p + 1 : -p - 1; }
+
+    // the same in the order of this view
+    protected int lowerIn(int p) { return descending ? higherAt(p) : lowerAt(p); }
+
+    protected int floorIn(int p) { return descending ? ceilingAt(p) : floorAt(p); }
+
+    protected int ceilingIn(int p) { return descending ? floorAt(p) : ceilingAt(p); }
+
+    protected int higherIn(int p) { return descending ? lowerAt(p) : higherAt(p); }
+
+    protected boolean isOutOfBounds(int i) { return i < from || i >= to; }
+
+    private T at(int i) { return isOutOfBounds(i) ? null : get(i); }
+
+    protected int firstAt() {
+        checkIfEmpty();
+        return descending ? to - 1 : from;
+    }
+
+    protected int lastAt() {
+        checkIfEmpty();
+        return descending ? from : to - 1;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() { return descending ? Collections.reverseOrder() : null; }
+
+    @Override
+    public T lower(T t) { return at(lowerIn(search(t))); }
+
+    @Override
+    public T floor(T t) { return at(floorIn(search(t))); }
+
+    @Override
+    public T ceiling(T t) { return at(ceilingIn(search(t))); }
+
+    @Override
+    public T higher(T t) { return at(higherIn(search(t))); }
+
+    @Override
+    public T first() { return get(firstAt()); }
+
+    @Override
+    public T last() { return get(lastAt()); }
+
+    @Override
+    public T pollFirst() { throw new UnsupportedOperationException("Set is immutable"); }
+
+    @Override
+    public T pollLast() { throw new UnsupportedOperationException("Set is immutable"); }
+
+    @Override
+    public void clear() { throw new UnsupportedOperationException("Set is immutable"); }
+
+    @Override
+    public int size() { return to - from; }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int i = descending ? to - 1 : from;
+
+            @Override
+            public boolean hasNext() { return !isOutOfBounds(i); }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                final T element = get(i);
+                i += descending ? -1 : 1;
+                return element;
+            }
+        };
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() { return from == to ? empty(!descending) : view(from, to, !descending); }
+
+    @Override
+    public Iterator<T> descendingIterator() { return descendingSet().iterator(); }
+
+    // array indices [lo, hi) of the elements after or before a key in the order of this view
+    private int tailFrom(T t, boolean b) {
+        final int p = search(t);
+        return descending ? from : b ? ceilingAt(p) : higherAt(p);
+    }
+
+    private int tailTo(T t, boolean b) {
+        final int p = search(t);
+        return descending ? (b ? floorAt(p) : lowerAt(p)) + 1 : to;
+    }
+
+    private int headFrom(T t, boolean b) {
+        final int p = search(t);
+        return descending ? b ? ceilingAt(p) : higherAt(p) : from;
+    }
+
+    private int headTo(T t, boolean b) {
+        final int p = search(t);
+        return descending ? to : (b ? floorAt(p) : lowerAt(p)) + 1;
+    }
+
+    private NavigableSet<T> range(int lo, int hi) { return lo >= hi ? empty(descending) : view(lo, hi, descending); }
+
+    @Override
+    public NavigableSet<T> subSet(T t, boolean b, T e1, boolean b1) {
+        if ((descending ? e1.compareTo(t) : t.compareTo(e1)) > 0) throw new IllegalArgumentException("fromKey > toKey");
+
+        return range(Math.max(tailFrom(t, b), headFrom(e1, b1)), Math.min(tailTo(t, b), headTo(e1, b1)));
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T t, boolean b) { return range(headFrom(t, b), headTo(t, b)); }
+
+    @Override
+    public NavigableSet<T> tailSet(T t, boolean b) { return range(tailFrom(t, b), tailTo(t, b)); }
+
+    @Override
+    public SortedSet<T> subSet(T t, T e1) { return subSet(t, true, e1, false); }
+
+    @Override
+    public SortedSet<T> headSet(T t) { return headSet(t, false); }
+
+    @Override
+    public SortedSet<T> tailSet(T t) { return tailSet(t, true); }
+
+    private void checkIfEmpty() { if (size() == 0) throw new NoSuchElementException("Collection is empty"); }
+}
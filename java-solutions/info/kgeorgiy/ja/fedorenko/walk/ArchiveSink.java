@@ -0,0 +1,75 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.Set;
+
+// descends into zip and jar files through the zip file system and names their entries "archive!/entry";
+// entries are streamed, never extracted, and an archive stays open until the hasher has drained all of them
+/*package-private*/ class ArchiveSink implements FileSink {
+    private static final Set<String> EXTENSIONS = Set.of("zip", "jar", "war", "ear");
+
+    private final OrderedHasher hasher;
+
+    ArchiveSink(OrderedHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    // archives nested in archives are hashed as plain entries
+    private static boolean isArchive(Path file) {
+        final Path fileName = file.getFileName();
+        if (fileName == null || file.getFileSystem() != FileSystems.getDefault()) return false;
+
+        final String name = fileName.toString();
+        final int dot = name.lastIndexOf('.');
+        return dot >= 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public void file(String name, Path file, BasicFileAttributes attrs) throws IOException {
+        if (!isArchive(file)) {
+            hasher.file(name, file, attrs);
+            return;
+        }
+
+        final FileSystem archive;
+        try {
+            archive = FileSystems.newFileSystem(file);
+        } catch (IOException | ProviderNotFoundException | SecurityException e) {
+            // not a readable archive after all, but still a file
+            hasher.file(name, file, attrs);
+            return;
+        }
+
+        try (archive) {
+            for (Path root : archive.getRootDirectories()) {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path entry, BasicFileAttributes entryAttrs) throws IOException {
+                        hasher.file(name + "!" + entry, entry, entryAttrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path entry, IOException exc) throws IOException {
+                        hasher.error(name + "!" + entry);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+
+            hasher.flush();
+        }
+    }
+
+    @Override
+    public void error(String name) throws IOException { hasher.error(name); }
+
+    @Override
+    public void enterDirectory(String name) throws IOException { hasher.enterDirectory(name); }
+
+    @Override
+    public void leaveDirectory(String name, boolean failed) throws IOException { hasher.leaveDirectory(name, failed); }
+}
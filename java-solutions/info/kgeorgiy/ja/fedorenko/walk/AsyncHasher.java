@@ -0,0 +1,144 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// keeps up to depth reads of a file in flight while earlier ones are digested in order, so on slow storage
+// the latency of one read hides behind the hashing of another; buffers come from one bounded pool shared
+// by all files, which caps the memory however many files are being read at once
+/*package-private*/ class AsyncHasher implements Closeable {
+    private static final int READ_SIZE = 1 << 18;
+
+    private final DigestAlgorithm algorithm;
+    private final int depth;
+    private final BlockingQueue<ByteBuffer> pool;
+    private final ExecutorService io;
+
+    AsyncHasher(DigestAlgorithm algorithm, int depth, int threads) {
+        if (depth <= 0) throw new IllegalArgumentException("-async must be positive");
+        this.algorithm = algorithm;
+        this.depth = depth;
+        this.pool = new ArrayBlockingQueue<>(depth * threads);
+        for (int i = 0; i < depth * threads; i++) {
+            pool.add(ByteBuffer.allocateDirect(READ_SIZE));
+        }
+        // the default channel implementation blocks one of these per outstanding read
+        this.io = Executors.newFixedThreadPool(depth * threads, r -> {
+            final Thread thread = new Thread(r, "walk-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private record Read(ByteBuffer buffer, long position, Future<Integer> result) {}
+
+    // null when the file cannot be read
+    public byte[] hash(Path file) {
+        if (file.getFileSystem() != FileSystems.getDefault()) return FileHasher.hash(file, algorithm);
+
+        try {
+            final Digester digester = algorithm.create();
+            digest(file, digester);
+            return digester.digest();
+        } catch (IOException | SecurityException | FileSystemNotFoundException | UnsupportedOperationException e) {
+            WalkMetrics.failure(e);
+            return null;
+        }
+    }
+
+    private void digest(Path file, Digester md) throws IOException {
+        final Deque<Read> reads = new ArrayDeque<>();
+        try (AsynchronousFileChannel ch = AsynchronousFileChannel.open(file, Set.of(StandardOpenOption.READ), io)) {
+            final long size = ch.size();
+            long next = 0;
+
+            while (true) {
+                // another buffer is only waited for when nothing is in flight, so files never deadlock over the pool
+                while (next < size && reads.size() < depth) {
+                    final ByteBuffer buffer = reads.isEmpty() ? take() : pool.poll();
+                    if (buffer == null) break;
+
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), size - next));
+                    reads.add(new Read(buffer, next, ch.read(buffer, next)));
+                    next += buffer.limit();
+                }
+
+                final Read read = reads.poll();
+                if (read == null) break;
+                try {
+                    // a short read is completed in place, later reads are already past it
+                    int n = await(read.result());
+                    while (n != -1 && read.buffer().hasRemaining()) {
+                        n = await(ch.read(read.buffer(), read.position() + read.buffer().position()));
+                    }
+                    if (n == -1) throw new EOFException("File was truncated while hashing");
+
+                    WalkMetrics.read(read.buffer().position());
+                    md.update(read.buffer().flip());
+                } finally {
+                    pool.add(read.buffer());
+                }
+            }
+
+            // the file may have grown since size() was taken
+            final ByteBuffer buffer = take();
+            try {
+                for (long pos = next; ; ) {
+                    final int n = await(ch.read(buffer.clear(), pos));
+                    if (n == -1) break;
+                    md.update(buffer.flip());
+                    WalkMetrics.read(n);
+                    pos += n;
+                }
+            } finally {
+                pool.add(buffer);
+            }
+        } finally {
+            // closing the channel has failed whatever was still in flight, so the buffers are free again
+            for (Read read : reads) {
+                pool.add(read.buffer());
+            }
+        }
+    }
+
+    private ByteBuffer take() throws InterruptedIOException {
+        try {
+            return pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+    }
+
+    private static int await(Future<Integer> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) throw cause;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() { io.shutdownNow(); }
+}
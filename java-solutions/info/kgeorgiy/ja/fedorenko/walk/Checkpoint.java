@@ -0,0 +1,141 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// journal of how far the output got: the input line, the number of its entries written and the output offset;
+// a restart truncates the output to that offset and skips everything before it without hashing
+/*package-private*/ class Checkpoint implements Closeable {
+    private static final int BATCH_ENTRIES = 10_000;
+    private static final long BATCH_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Path file;
+    private final FileChannel outChannel;
+    private final HashLineWriter out;
+    private final long resumeLine;
+    private final long resumePosition;
+    private final String resumeName;
+    // {input line, global index of its first entry} for lines that may still have unwritten entries
+    private final Deque<long[]> lines = new ArrayDeque<>();
+    private long submitted;
+    private long written;
+    private String lastName = "";
+    private long lastSync = System.nanoTime();
+
+    Checkpoint(Path file, Path output) throws IOException {
+        this.file = file;
+
+        long offset = 0, line = 0, position = 0;
+        String name = "";
+        if (Files.exists(file)) {
+            final List<String> saved = Files.readAllLines(file, StandardCharsets.UTF_8);
+            try {
+                final String[] parts = saved.get(0).split(" ");
+                line = Long.parseLong(parts[0]);
+                position = Long.parseLong(parts[1]);
+                offset = Long.parseLong(parts[2]);
+                name = saved.size() > 1 ? saved.get(1) : "";
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                throw new IOException("Malformed checkpoint " + file);
+            }
+        }
+
+        outChannel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (outChannel.size() < offset) {
+            outChannel.close();
+            throw new IOException("Output is shorter than checkpoint " + file + " claims, remove it to start over");
+        }
+        outChannel.truncate(offset).position(offset);
+
+        resumeLine = line;
+        resumePosition = position;
+        resumeName = name;
+        out = new HashLineWriter(outChannel);
+        if (offset > 0) System.err.println("Resuming from input line " + (line + 1) + ", entry " + position);
+    }
+
+    public HashLineWriter writer() { return out; }
+
+    // lines before the checkpoint are skipped without being walked at all
+    public boolean skipLine(long line) { return line < resumeLine; }
+
+    public FileSink track(long line, FileSink sink) {
+        final long skip = line == resumeLine ? resumePosition : 0;
+        lines.add(new long[]{line, submitted - skip});
+
+        return new FileSink() {
+            private long seen;
+
+            @Override
+            public void file(String name, Path file, BasicFileAttributes attrs) throws IOException {
+                if (skipped(name)) return;
+                submitted++;
+                sink.file(name, file, attrs);
+            }
+
+            @Override
+            public void error(String name) throws IOException {
+                if (skipped(name)) return;
+                submitted++;
+                sink.error(name);
+            }
+
+            private boolean skipped(String name) {
+                if (seen++ >= skip) return false;
+
+                if (seen == skip && !name.equals(resumeName)) {
+                    System.err.println("Tree changed since the checkpoint: expected " + resumeName + " but found " + name);
+                }
+                return true;
+            }
+        };
+    }
+
+    public void written(String name) throws IOException {
+        written++;
+        lastName = name;
+
+        if (written % BATCH_ENTRIES == 0 || System.nanoTime() - lastSync > BATCH_NANOS) sync();
+    }
+
+    private void sync() throws IOException {
+        // the output must be durable before the checkpoint claims it
+        out.flush();
+        outChannel.force(false);
+
+        // the current line is the last started one whose first entry is already written
+        long[] current = lines.poll();
+        while (!lines.isEmpty() && lines.peek()[1] <= written) {
+            current = lines.poll();
+        }
+        if (current != null) lines.addFirst(current);
+        final String state = current == null
+                ? "0 0 0"
+                : current[0] + " " + (written - current[1]) + " " + outChannel.position();
+
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(StandardCharsets.UTF_8.encode(state + System.lineSeparator() + lastName + System.lineSeparator()));
+            ch.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        lastSync = System.nanoTime();
+    }
+
+    // the walk is done, a later run must start over
+    public void complete() throws IOException {
+        out.flush();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException { out.close(); }
+}
@@ -0,0 +1,91 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/*package-private*/ enum DigestAlgorithm {
+    SHA_256("SHA-256", 32, () -> new MessageDigester("SHA-256")),
+    SHA_1("SHA-1", 20, () -> new MessageDigester("SHA-1")),
+    CRC32C("CRC32C", 4, () -> new ChecksumDigester(new CRC32C())),
+    XXH64("XXH64", 8, XXHash64::new);
+
+    private final String title;
+    private final int length;
+    private final Supplier<Digester> factory;
+
+    DigestAlgorithm(String title, int length, Supplier<Digester> factory) {
+        this.title = title;
+        this.length = length;
+        this.factory = factory;
+    }
+
+    public static DigestAlgorithm forName(String name) {
+        return Arrays.stream(values())
+                .filter(algo -> algo.title.equalsIgnoreCase(name))
+                .findAny()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown digest algorithm " + name));
+    }
+
+    public Digester create() { return factory.get(); }
+
+    public String title() { return title; }
+
+    public int length() { return length; }
+
+    // what is printed for an entry that could not be hashed; hashing itself reports that as null,
+    // since a digest can be all zeroes as well, as CRC32C of an empty file is
+    public byte[] errorHash() { return new byte[length]; }
+
+    private static class MessageDigester implements Digester {
+        private final MessageDigest md;
+
+        MessageDigester(String algorithm) {
+            try {
+                md = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError("Digest: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) { md.update(buffer); }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) { md.update(bytes, offset, length); }
+
+        @Override
+        public byte[] digest() { return md.digest(); }
+
+        @Override
+        public void reset() { md.reset(); }
+
+        @Override
+        public int length() { return md.getDigestLength(); }
+    }
+
+    private record ChecksumDigester(Checksum checksum) implements Digester {
+        @Override
+        public void update(ByteBuffer buffer) { checksum.update(buffer); }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) { checksum.update(bytes, offset, length); }
+
+        @Override
+        public byte[] digest() {
+            final byte[] result = ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue()).array();
+            checksum.reset();
+            return result;
+        }
+
+        @Override
+        public void reset() { checksum.reset(); }
+
+        @Override
+        public int length() { return Integer.BYTES; }
+    }
+}
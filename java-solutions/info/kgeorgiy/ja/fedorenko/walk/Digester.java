@@ -0,0 +1,17 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.nio.ByteBuffer;
+
+/*package-private*/ interface Digester {
+    // consumes all remaining bytes of the buffer
+    void update(ByteBuffer buffer);
+
+    void update(byte[] bytes, int offset, int length);
+
+    // returns the digest of everything consumed since the last reset and resets the state
+    byte[] digest();
+
+    void reset();
+
+    int length();
+}
@@ -0,0 +1,86 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+// adds a "hash dir/" line after every walked directory, so equal subtrees can be pruned when comparing:
+// H of ('d' or 'f', name, 0x00, digest) over the children sorted by name, names relative to the directory;
+// only the open directories are kept, each with the digests of its direct children
+/*package-private*/ class DirectoryDigests implements OrderedHasher.ResultWriter {
+    private static final byte[] FILE = {'f'};
+    private static final byte[] DIRECTORY = {'d'};
+    private static final byte[] END = {0};
+
+    private final DigestAlgorithm algorithm;
+    private final OrderedHasher.ResultWriter out;
+    private final Deque<Level> open = new ArrayDeque<>();
+
+    DirectoryDigests(DigestAlgorithm algorithm, OrderedHasher.ResultWriter out) {
+        this.algorithm = algorithm;
+        this.out = out;
+    }
+
+    @Override
+    public void write(String name, byte[] hash) throws IOException {
+        out.write(name, hash);
+        child(name, false, hash);
+    }
+
+    @Override
+    public void enterDirectory(String name) { open.push(new Level(name)); }
+
+    @Override
+    public void leaveDirectory(String name, boolean failed) throws IOException {
+        final Level level = open.pop();
+        final byte[] digest = failed ? null : level.digest();
+
+        out.write(name.endsWith(File.separator) ? name : name + File.separator, digest);
+        child(name, true, digest);
+    }
+
+    private void child(String name, boolean directory, byte[] hash) {
+        final Level parent = open.peek();
+        if (parent != null) parent.children.add(new Child(parent.relative(name), directory, hash));
+    }
+
+    private class Level {
+        private final String name;
+        private final List<Child> children = new ArrayList<>();
+
+        Level(String name) {
+            this.name = name;
+        }
+
+        // archive entries are nested deeper than one component, so the whole remainder is kept
+        private String relative(String child) {
+            if (!child.startsWith(name)) return child.substring(child.lastIndexOf(File.separatorChar) + 1);
+
+            int start = name.length();
+            while (start < child.length() && child.charAt(start) == File.separatorChar) start++;
+            return child.substring(start);
+        }
+
+        private byte[] digest() {
+            children.sort(Comparator.comparing(Child::name).thenComparing(Child::directory));
+
+            final Digester digester = algorithm.create();
+            for (Child child : children) {
+                final byte[] bytes = child.name.getBytes(StandardCharsets.UTF_8);
+                digester.update(child.directory ? DIRECTORY : FILE, 0, 1);
+                digester.update(bytes, 0, bytes.length);
+                digester.update(END, 0, 1);
+                final byte[] hash = child.hash == null ? algorithm.errorHash() : child.hash;
+                digester.update(hash, 0, hash.length);
+            }
+            return digester.digest();
+        }
+    }
+
+    private record Child(String name, boolean directory, byte[] hash) {}
+}
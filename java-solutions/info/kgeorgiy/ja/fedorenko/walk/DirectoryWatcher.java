@@ -0,0 +1,247 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// watches the input trees and reports a path once it has seen no events for the debounce interval,
+// so a burst of rewrites of one file is coalesced into a single change
+/*package-private*/ class DirectoryWatcher implements Closeable {
+    private final WatchService watcher;
+    private final long debounceNanos;
+    private final Listener listener;
+    // one record per watched directory: the platform hands out one key for a directory however it is reached,
+    // by relative and absolute spellings alike or through a symbolic link
+    private final Map<WatchKey, Watched> dirs = new HashMap<>();
+    private final Set<Path> treeRoots = new HashSet<>();
+    private final Map<Path, Change> pending = new LinkedHashMap<>();
+
+    DirectoryWatcher(long debounceMillis, Listener listener) throws IOException {
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.listener = listener;
+    }
+
+    public void watch(Path root) throws IOException {
+        if (Files.isDirectory(root)) {
+            treeRoots.add(root);
+            registerTree(root);
+        } else {
+            final Path file = root.toAbsolutePath().normalize();
+            if (file.getParent() == null) return;
+
+            // the path is kept as given, so that reported names match the input line
+            register(file.getParent(), false).files.computeIfAbsent(file.getFileName(), f -> new HashSet<>()).add(root);
+        }
+    }
+
+    // being part of a tree adds the spelling its entries are reported under
+    private Watched register(Path dir, boolean tree) throws IOException {
+        final Path absolute = dir.toAbsolutePath().normalize();
+        final WatchKey key = absolute.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        final Watched watched = dirs.computeIfAbsent(key, k -> new Watched(k, absolute));
+        if (tree) watched.names.add(dir);
+        return watched;
+    }
+
+    // follows links as the walk does, which reports a link back to an ancestor as an error and goes no deeper
+    private void registerTree(Path root) throws IOException {
+        final Deque<Watched> visiting = new ArrayDeque<>();
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                try {
+                    visiting.push(register(dir, true));
+                    return FileVisitResult.CONTINUE;
+                } catch (IOException e) {
+                    // already gone or unreadable, its parent still reports what happens to it
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                visiting.element().entries.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                visiting.pop();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public void run() throws IOException, InterruptedException {
+        // changes already seen are still reported after the last watched directory is gone
+        while (!dirs.isEmpty() || !pending.isEmpty()) {
+            WatchKey key = pending.isEmpty() ? watcher.take() : watcher.poll(untilSettled(), TimeUnit.NANOSECONDS);
+            while (key != null) {
+                handle(key);
+                key = watcher.poll();
+            }
+
+            settle();
+        }
+    }
+
+    private long untilSettled() {
+        final long now = System.nanoTime();
+        return pending.values().stream().mapToLong(c -> c.lastEvent + debounceNanos - now).min().orElse(0);
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        final Watched watched = dirs.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // events were lost, only a rescan of everything is safe
+                treeRoots.forEach(root -> mark(root, false, false));
+                dirs.values().forEach(w -> w.files.values().forEach(files -> files.forEach(file -> mark(file, false, false))));
+                continue;
+            }
+            if (watched == null) continue;
+
+            final Path name = (Path) event.context();
+            final Set<Path> named = watched.files.get(name);
+            if (named != null) {
+                for (Path file : named) {
+                    if (event.kind() == ENTRY_DELETE) deleted(file);
+                    else mark(file, false, false);
+                }
+            }
+
+            for (Path base : List.copyOf(watched.names)) {
+                final Path child = base.resolve(name);
+                if (event.kind() == ENTRY_DELETE) {
+                    // a removed directory reports its own entries once its key is gone
+                    if (watched.entries.remove(child)) deleted(child);
+                    else pending.remove(child);
+                } else if (Files.isDirectory(child)) {
+                    // a modified directory only means one of its entries changed, and those report themselves
+                    if (event.kind() == ENTRY_CREATE) {
+                        registerTree(child);
+                        mark(child, false, true);
+                    }
+                } else {
+                    mark(child, false, watched.entries.add(child));
+                }
+            }
+        }
+
+        if (!key.reset()) gone(watched);
+    }
+
+    // a directory that can no longer be watched is reported deleted with every file reported under it,
+    // whichever order the platform delivered the events of the removal in
+    private void gone(Watched gone) {
+        if (gone == null) return;
+
+        final List<Watched> removed = new ArrayList<>();
+        for (Iterator<Watched> it = dirs.values().iterator(); it.hasNext(); ) {
+            final Watched watched = it.next();
+            if (!watched.absolute.startsWith(gone.absolute)) continue;
+
+            it.remove();
+            watched.key.cancel();
+            removed.add(watched);
+        }
+
+        for (Watched watched : removed) {
+            watched.entries.forEach(this::deleted);
+            watched.files.values().forEach(files -> files.forEach(this::deleted));
+        }
+        // a walk of a removed directory is of no use any more, and a directory never had a line of its own
+        removed.forEach(watched -> watched.names.forEach(pending::remove));
+    }
+
+    // a file that was never reported, having appeared itself or in a new directory since the last settled batch,
+    // needs no tombstone
+    private void deleted(Path file) {
+        for (Path path = file; path != null; path = path.getParent()) {
+            final Change change = pending.get(path);
+            if (change != null && change.created) {
+                if (path.equals(file)) pending.remove(file);
+                return;
+            }
+        }
+        mark(file, true, false);
+    }
+
+    private void mark(Path path, boolean deleted, boolean created) {
+        // a change inside a directory that is about to be walked as a whole only postpones that walk
+        for (Path dir = path.getParent(); !deleted && dir != null; dir = dir.getParent()) {
+            final Change change = pending.get(dir);
+            if (change != null && !change.deleted) {
+                pending.put(dir, new Change(false, change.created, System.nanoTime()));
+                return;
+            }
+        }
+
+        final Change before = pending.remove(path);
+        pending.put(path, new Change(deleted, !deleted && (created || before != null && before.created), System.nanoTime()));
+    }
+
+    private void settle() throws IOException {
+        final long now = System.nanoTime();
+        boolean any = false;
+
+        for (Iterator<Map.Entry<Path, Change>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<Path, Change> entry = it.next();
+            if (now - entry.getValue().lastEvent < debounceNanos) continue;
+
+            it.remove();
+            any = true;
+            // a change to something gone since is followed by its own delete event
+            if (entry.getValue().deleted) listener.deleted(entry.getKey());
+            else if (Files.exists(entry.getKey())) listener.changed(entry.getKey());
+        }
+
+        if (any) listener.settled();
+    }
+
+    @Override
+    public void close() throws IOException { watcher.close(); }
+
+    interface Listener {
+        // a created or modified file, or a new directory to be walked as a whole
+        void changed(Path path) throws IOException;
+
+        // only ever a file that was reported before, by the first walk or as changed
+        void deleted(Path path) throws IOException;
+
+        // called after every batch of settled changes
+        void settled() throws IOException;
+    }
+
+    // created: appeared after the last settled batch, so nothing has been reported for it yet
+    private record Change(boolean deleted, boolean created, long lastEvent) {}
+
+    private static final class Watched {
+        private final WatchKey key;
+        // absolute normalized path it was first registered by
+        private final Path absolute;
+        // spellings entries are reported under, one per way the walk reaches the directory; empty unless in a tree
+        private final Set<Path> names = new LinkedHashSet<>();
+        // files reported under any of the names
+        private final Set<Path> entries = new HashSet<>();
+        // files named in the input by their name in this directory, each with the spellings it was given in
+        private final Map<Path, Set<Path>> files = new HashMap<>();
+
+        private Watched(WatchKey key, Path absolute) {
+            this.key = key;
+            this.absolute = absolute;
+        }
+    }
+}
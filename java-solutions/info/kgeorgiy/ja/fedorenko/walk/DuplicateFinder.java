@@ -0,0 +1,172 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+// narrows candidates by size, then by a digest of the head and tail, and fully hashes only what still collides;
+// a file reached under several names, as a hard link or through overlapping inputs, is one candidate,
+// and its other names are reported after the duplicates as a block of "=name" lines;
+// every file stays in memory as a candidate until the walk ends, since any later one may share its size or identity
+/*package-private*/ class DuplicateFinder implements FileSink, AutoCloseable {
+    private static final long EDGE_SIZE = 4 << 10;
+    private static final char LINK = '=';
+
+    private final DigestAlgorithm algorithm;
+    private final Function<Path, byte[]> fullHash;
+    private final WalkMetrics metrics;
+    private final ExecutorService workers;
+    private final Map<Long, List<Candidate>> bySize = new HashMap<>();
+    private final Map<Object, Candidate> byIdentity = new HashMap<>();
+    private int files;
+
+    // metrics may be null
+    DuplicateFinder(DigestAlgorithm algorithm, Function<Path, byte[]> fullHash, int threads, WalkMetrics metrics) {
+        this.algorithm = algorithm;
+        this.fullHash = fullHash;
+        this.metrics = metrics;
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override
+    public void file(String name, Path file, BasicFileAttributes attrs) {
+        final Candidate candidate = new Candidate(name, file, attrs.size(), files);
+        final Candidate first = byIdentity.putIfAbsent(identity(file, attrs), candidate);
+        if (first != null) {
+            if (!first.name.equals(name) && !first.links.contains(name)) first.links.add(name);
+            return;
+        }
+
+        files++;
+        bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(candidate);
+    }
+
+    // device and inode where the file system has them, the resolved path otherwise
+    private static Object identity(Path file, BasicFileAttributes attrs) {
+        if (attrs.fileKey() != null) return attrs.fileKey();
+        try {
+            return file.toRealPath();
+        } catch (IOException | SecurityException e) {
+            return file.toAbsolutePath().normalize();
+        }
+    }
+
+    // unreadable entries cannot be duplicates of anything
+    @Override
+    public void error(String name) {}
+
+    public void report(HashLineWriter out) throws IOException {
+        final List<Candidate> linked = byIdentity.values().stream()
+                .filter(c -> !c.links.isEmpty())
+                .sorted(Comparator.comparingInt(c -> c.order))
+                .toList();
+        byIdentity.clear();
+
+        final List<Candidate> sized = new ArrayList<>();
+        for (List<Candidate> group : bySize.values()) {
+            if (group.size() > 1) sized.addAll(group);
+        }
+        bySize.clear();
+        sized.sort(Comparator.comparingInt(c -> c.order));
+
+        // small files are read whole by the partial hash, so it already is the full one for them
+        final List<List<Candidate>> partial = regroup(sized, c -> c.size <= 2 * EDGE_SIZE ? hash(c) : edges(c));
+        final List<Candidate> colliding = new ArrayList<>();
+        final List<List<Candidate>> groups = new ArrayList<>();
+        for (List<Candidate> group : partial) {
+            if (group.get(0).size <= 2 * EDGE_SIZE) groups.add(group);
+            else colliding.addAll(group);
+        }
+
+        final int fullyHashed = colliding.size();
+        groups.addAll(regroup(colliding, this::hash));
+
+        // biggest savings first, members in traversal order
+        groups.sort(Comparator.comparingLong((List<Candidate> g) -> g.get(0).size * (g.size() - 1)).reversed()
+                .thenComparingInt(g -> g.get(0).order));
+        for (List<Candidate> group : groups) {
+            for (Candidate c : group) {
+                out.writeHash(c.hash, c.name);
+            }
+            out.newLine();
+        }
+        for (Candidate c : linked) {
+            link(out, c.name);
+            for (String name : c.links) {
+                link(out, name);
+            }
+            out.newLine();
+        }
+
+        System.err.printf("%d files, %d size collisions, %d fully hashed, %d duplicate groups, %d files with several names%n",
+                files, sized.size(), fullyHashed, groups.size(), linked.size());
+    }
+
+    private static void link(HashLineWriter out, String name) throws IOException {
+        out.write(LINK);
+        out.write(name);
+        out.newLine();
+    }
+
+    // keeps groups of at least two candidates sharing size and key, files that could not be read never match
+    private List<List<Candidate>> regroup(List<Candidate> candidates, Function<Candidate, byte[]> key) throws IOException {
+        final List<Future<byte[]>> keys = new ArrayList<>(candidates.size());
+        for (Candidate c : candidates) {
+            keys.add(workers.submit(() -> key.apply(c)));
+        }
+
+        final Map<List<Object>, List<Candidate>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            final Candidate c = candidates.get(i);
+            final byte[] hash = Util.await(keys.get(i), c.name);
+            if (hash == null) continue;
+
+            c.hash = hash;
+            groups.computeIfAbsent(List.of(c.size, ByteBuffer.wrap(hash)), k -> new ArrayList<>()).add(c);
+        }
+
+        return groups.values().stream().filter(g -> g.size() > 1).toList();
+    }
+
+    private byte[] hash(Candidate c) {
+        return metrics == null ? fullHash.apply(c.file) : metrics.timed(() -> fullHash.apply(c.file));
+    }
+
+    private byte[] edges(Candidate c) {
+        try (FileChannel ch = FileChannel.open(c.file, StandardOpenOption.READ)) {
+            final Digester digester = algorithm.create();
+            FileHasher.digestRange(ch, digester, 0, EDGE_SIZE);
+            FileHasher.digestRange(ch, digester, c.size - EDGE_SIZE, EDGE_SIZE);
+            return digester.digest();
+        } catch (IOException | SecurityException | UnsupportedOperationException e) {
+            WalkMetrics.failure(e);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() { workers.shutdownNow(); }
+
+    private static class Candidate {
+        private final String name;
+        private final Path file;
+        private final long size;
+        private final int order;
+        // further names of the same file, in traversal order
+        private final List<String> links = new ArrayList<>(0);
+        private byte[] hash;
+
+        Candidate(String name, Path file, long size, int order) {
+            this.name = name;
+            this.file = file;
+            this.size = size;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*package-private*/ final class FileHasher {
+    static final long MAPPED_THRESHOLD = 64L << 20;
+
+    private static final int STREAM_BUFFER_SIZE = 1024;
+    private static final int DIRECT_BUFFER_SIZE = 1 << 20;
+    private static final long MAP_CHUNK_SIZE = 1L << 28;
+
+    // direct buffers are costly to allocate, so every worker keeps its own for the whole run
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
+
+    enum Strategy { STREAM, DIRECT, MAPPED }
+
+    private FileHasher() {}
+
+    public static Strategy choose(long size) {
+        return size >= MAPPED_THRESHOLD ? Strategy.MAPPED : Strategy.DIRECT;
+    }
+
+    // null when the file cannot be read
+    public static byte[] hash(Path file, DigestAlgorithm algorithm) {
+        try {
+            final Digester digester = algorithm.create();
+            digest(file, digester, null);
+
+            return digester.digest();
+        } catch (IOException | SecurityException | FileSystemNotFoundException | UnsupportedOperationException e) {
+            WalkMetrics.failure(e);
+            return null;
+        }
+    }
+
+    // size followed by evenly spaced blocks, the first and the last included, so a bounded number of bytes is read;
+    // null when they would cover the whole file anyway
+    public static byte[] fingerprint(Path file, DigestAlgorithm algorithm, long block, int samples) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = ch.size();
+            if (size <= block * samples) return null;
+
+            final Digester digester = algorithm.create();
+            digester.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+            for (int i = 0; i < samples; i++) {
+                digestRange(ch, digester, samples == 1 ? 0 : (size - block) * i / (samples - 1), block);
+            }
+            return digester.digest();
+        }
+    }
+
+    // strategy == null picks one by the file size; files of other file systems, such as archive entries,
+    // are always streamed, since their channels may be backed by extracted copies
+    public static void digest(Path file, Digester md, Strategy strategy) throws IOException {
+        if (strategy == Strategy.STREAM || file.getFileSystem() != FileSystems.getDefault()) {
+            digestStream(file, md);
+            return;
+        }
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = ch.size();
+
+            switch (strategy == null ? choose(size) : strategy) {
+                case DIRECT -> digestChannel(ch, md, DIRECT_BUFFER.get());
+                case MAPPED -> {
+                    long pos = 0;
+                    while (pos < size) {
+                        final long len = Math.min(MAP_CHUNK_SIZE, size - pos);
+                        md.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, len));
+                        WalkMetrics.read(len);
+                        pos += len;
+                    }
+
+                    // the file may have grown since size() was taken
+                    ch.position(pos);
+                    digestChannel(ch, md, DIRECT_BUFFER.get());
+                }
+                default -> throw new AssertionError("Unexpected strategy");
+            }
+        }
+    }
+
+    // digests [position, position + length) without moving the channel position, safe to call concurrently
+    public static void digestRange(FileChannel ch, Digester md, long position, long length) throws IOException {
+        if (length >= MAPPED_THRESHOLD) {
+            for (long pos = position, end = position + length; pos < end; ) {
+                final long len = Math.min(MAP_CHUNK_SIZE, end - pos);
+                md.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, len));
+                WalkMetrics.read(len);
+                pos += len;
+            }
+            return;
+        }
+
+        final ByteBuffer buffer = DIRECT_BUFFER.get();
+        for (long pos = position, end = position + length; pos < end; ) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - pos));
+            final int read = ch.read(buffer, pos);
+            if (read == -1) throw new EOFException("File was truncated while hashing");
+
+            buffer.flip();
+            md.update(buffer);
+            WalkMetrics.read(read);
+            pos += read;
+        }
+    }
+
+    private static void digestChannel(FileChannel ch, Digester md, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int read;
+        while ((read = ch.read(buffer)) != -1) {
+            WalkMetrics.read(read);
+            buffer.flip();
+            md.update(buffer);
+            buffer.clear();
+        }
+    }
+
+    private static void digestStream(Path file, Digester md) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            int readCh;
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+
+            while ((readCh = in.read(buffer)) != -1) {
+                md.update(buffer, 0, readCh);
+                WalkMetrics.read(readCh);
+            }
+        }
+    }
+}
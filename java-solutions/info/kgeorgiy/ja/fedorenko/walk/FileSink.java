@@ -0,0 +1,17 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// receives traversal results in traversal order
+/*package-private*/ interface FileSink {
+    void file(String name, Path file, BasicFileAttributes attrs) throws IOException;
+
+    void error(String name) throws IOException;
+
+    // bracket the entries of a walked directory, failed when some of them could not be listed
+    default void enterDirectory(String name) throws IOException {}
+
+    default void leaveDirectory(String name, boolean failed) throws IOException {}
+}
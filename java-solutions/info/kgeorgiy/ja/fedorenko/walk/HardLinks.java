@@ -0,0 +1,83 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// reads every multiply linked inode once: later links wait for the digest of the first one;
+// an inode is forgotten once all of its links were seen
+/*package-private*/ class HardLinks {
+    private final Map<List<Object>, Shared> shared = new ConcurrentHashMap<>();
+    private final LongAdder linkedFiles = new LongAdder();
+    private final LongAdder skippedBytes = new LongAdder();
+    private volatile boolean supported = true;
+
+    public Function<Path, byte[]> wrap(Function<Path, byte[]> hasher) {
+        return file -> {
+            if (!supported || file.getFileSystem() != FileSystems.getDefault()) return hasher.apply(file);
+
+            final Map<String, Object> attrs;
+            try {
+                attrs = Files.readAttributes(file, "unix:nlink,dev,ino,size");
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                // no link counts on this platform, so nothing to share
+                supported = false;
+                return hasher.apply(file);
+            } catch (IOException | SecurityException e) {
+                return hasher.apply(file);
+            }
+
+            final int links = (Integer) attrs.get("nlink");
+            if (links < 2) return hasher.apply(file);
+
+            final List<Object> key = List.of(attrs.get("dev"), attrs.get("ino"));
+            final Shared mine = new Shared(links - 1);
+            final Shared first = shared.putIfAbsent(key, mine);
+            if (first == null) {
+                try {
+                    final byte[] hash = hasher.apply(file);
+                    mine.hash.complete(hash);
+                    return hash;
+                } catch (RuntimeException | Error e) {
+                    mine.hash.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            if (first.remaining.decrementAndGet() <= 0) shared.remove(key, first);
+            linkedFiles.increment();
+            WalkMetrics.reused();
+            skippedBytes.add((Long) attrs.get("size"));
+            try {
+                return first.hash.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                if (e.getCause() instanceof Error err) throw err;
+                throw e;
+            }
+        };
+    }
+
+    public void report() {
+        System.err.printf("Hard links: %d files shared the digest of an earlier link, %d bytes not reread%n",
+                linkedFiles.sum(), skippedBytes.sum());
+    }
+
+    private static class Shared {
+        private final CompletableFuture<byte[]> hash = new CompletableFuture<>();
+        private final AtomicInteger remaining;
+
+        Shared(int remaining) {
+            this.remaining = new AtomicInteger(remaining);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// on-disk cache of file hashes keyed by path and validated by size, mtime and file key;
+// new entries are appended as a journal; the file is rewritten once it holds too many stale lines,
+// or when some entries were not reached by this run and may belong to deleted files
+/*package-private*/ class HashCache implements Closeable {
+    private static final String HEADER = "walk-cache 2 ";
+    private static final HexFormat HEX = HexFormat.of();
+    // a file modified within this window of being hashed may change again without a visible mtime change
+    private static final long RACY_WINDOW_NANOS = 2_000_000_000L;
+    private static final String NO_KEY = "-";
+
+    private final Path cacheFile;
+    private final String header;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Writer journal;
+    private int journalLines;
+
+    HashCache(Path cacheFile, String digestName) throws IOException {
+        this.cacheFile = cacheFile;
+        this.header = HEADER + digestName;
+
+        // a foreign or unreadable file is started over
+        if (!Files.exists(cacheFile) || !load()) {
+            entries.clear();
+            journalLines = 0;
+            Files.writeString(cacheFile, header + System.lineSeparator(), StandardCharsets.UTF_8);
+        }
+
+        journal = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        // terminate a line torn by a crash so that it does not swallow the next entry
+        if (!endsWithNewline(cacheFile)) journal.write(System.lineSeparator());
+    }
+
+    private boolean load() throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            if (!header.equals(in.readLine())) return false;
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                final Entry entry = Entry.parse(line);
+                if (entry != null) entries.put(entry.path, entry);
+                journalLines++;
+            }
+
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException {
+        try (SeekableByteChannel ch = Files.newByteChannel(file)) {
+            if (ch.size() == 0) return true;
+
+            final ByteBuffer last = ByteBuffer.allocate(1);
+            ch.position(ch.size() - 1).read(last);
+            return last.get(0) == '\n';
+        }
+    }
+
+    public Function<Path, byte[]> wrap(Function<Path, byte[]> hasher) {
+        return file -> {
+            // archive entries have no identity of their own outside the archive
+            if (file.getFileSystem() != FileSystems.getDefault()) return hasher.apply(file);
+
+            final String key;
+            final BasicFileAttributes before;
+            try {
+                key = file.toAbsolutePath().normalize().toString();
+                before = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException | SecurityException | IOError e) {
+                return hasher.apply(file);
+            }
+
+            final Entry cached = entries.get(key);
+            if (cached != null) cached.seen = true;
+            if (cached != null && cached.matches(before)) {
+                WalkMetrics.reused();
+                return cached.hash;
+            }
+
+            final long hashedAt = System.currentTimeMillis() * 1_000_000L;
+            final byte[] hash = hasher.apply(file);
+            if (hash != null && before.isRegularFile() && key.indexOf('\n') < 0 && unchanged(file, before)) {
+                final Entry entry = new Entry(key, before.size(), nanos(before), keyOf(before), hashedAt, hash);
+                entry.seen = true;
+                record(entry);
+            }
+
+            return hash;
+        };
+    }
+
+    private static boolean unchanged(Path file, BasicFileAttributes before) {
+        try {
+            final BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+            return after.size() == before.size() && nanos(after) == nanos(before)
+                    && Objects.equals(keyOf(after), keyOf(before));
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private synchronized void record(Entry entry) {
+        entries.put(entry.path, entry);
+
+        try {
+            journal.write(entry.format());
+            journal.write(System.lineSeparator());
+            journalLines++;
+        } catch (IOException e) {
+            // cache is an optimization only, losing an entry just costs a rehash next time
+        }
+    }
+
+    private void compact() throws IOException {
+        final Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(header);
+            out.newLine();
+            for (Entry entry : entries.values()) {
+                // entries outside this run survive only while their file still exists
+                if (!entry.seen && !Files.exists(Paths.get(entry.path))) continue;
+
+                out.write(entry.format());
+                out.newLine();
+            }
+        }
+
+        Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.close();
+
+        // compact once more than half of the journal is superseded, or to prune entries of deleted files
+        if (journalLines > 2 * entries.size() || entries.values().stream().anyMatch(entry -> !entry.seen)) compact();
+    }
+
+    private static long nanos(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static String keyOf(BasicFileAttributes attrs) {
+        final Object key = attrs.fileKey();
+        return key == null ? NO_KEY : key.toString().replace(' ', '_');
+    }
+
+    private static final class Entry {
+        private final String path;
+        private final long size;
+        private final long mtime;
+        private final String fileKey;
+        private final long hashedAt;
+        private final byte[] hash;
+        // reached by this run, so its file existed
+        private volatile boolean seen;
+
+        Entry(String path, long size, long mtime, String fileKey, long hashedAt, byte[] hash) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.fileKey = fileKey;
+            this.hashedAt = hashedAt;
+            this.hash = hash;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return mtime < hashedAt - RACY_WINDOW_NANOS
+                    && size == attrs.size() && mtime == nanos(attrs) && fileKey.equals(keyOf(attrs));
+        }
+
+        String format() {
+            return size + " " + mtime + " " + fileKey + " " + hashedAt + " " + HEX.formatHex(hash) + " " + path;
+        }
+
+        static Entry parse(String line) {
+            final String[] parts = line.split(" ", 6);
+            if (parts.length != 6) return null;
+
+            try {
+                return new Entry(parts[5], Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2],
+                        Long.parseLong(parts[3]), HEX.parseHex(parts[4]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// writes "hash name" lines without per-line garbage: hex digits and UTF-8 go straight into one large
+// byte buffer that is drained to the channel when full
+/*package-private*/ class HashLineWriter extends Writer {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 1 << 18;
+    private static final int CHUNK = 1 << 12;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] bytes = buffer.array();
+    private final char[] chars = new char[CHUNK];
+    private int size;
+
+    HashLineWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public static HashLineWriter open(Path file) throws IOException {
+        return new HashLineWriter(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    // flushed on close, but left open for whoever writes to it next
+    public static HashLineWriter stdout() {
+        final FileChannel channel = new FileOutputStream(FileDescriptor.out).getChannel();
+        return new HashLineWriter(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException { return channel.write(src); }
+
+            @Override
+            public boolean isOpen() { return channel.isOpen(); }
+
+            @Override
+            public void close() {}
+        });
+    }
+
+    // "hash name" with the hash zero-padded to the digest width
+    public void writeHash(byte[] hash, String name) throws IOException {
+        reserve(2 * hash.length + 1);
+        for (byte b : hash) {
+            bytes[size++] = HEX[(b >> 4) & 0xF];
+            bytes[size++] = HEX[b & 0xF];
+        }
+        bytes[size++] = ' ';
+        write(name, 0, name.length());
+        newLine();
+    }
+
+    // marks a path that no longer exists, in place of a hash of the same width
+    public void writeTombstone(int length, String name) throws IOException {
+        reserve(2 * length + 1);
+        for (int i = 0; i < 2 * length; i++) {
+            bytes[size++] = '-';
+        }
+        bytes[size++] = ' ';
+        write(name, 0, name.length());
+        newLine();
+    }
+
+    public void newLine() throws IOException {
+        reserve(NEW_LINE.length);
+        for (byte b : NEW_LINE) {
+            bytes[size++] = b;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int end = off + len; off < end; ) {
+            int n = Math.min(CHUNK, end - off);
+            // a surrogate pair is never split between chunks
+            if (n < end - off && Character.isHighSurrogate(str.charAt(off + n - 1))) n--;
+            str.getChars(off, off + n, chars, 0);
+            encode(chars, 0, n);
+            off += n;
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int end = off + len; off < end; ) {
+            int n = Math.min(CHUNK, end - off);
+            if (n < end - off && Character.isHighSurrogate(cbuf[off + n - 1])) n--;
+            encode(cbuf, off, n);
+            off += n;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        chars[0] = (char) c;
+        encode(chars, 0, 1);
+    }
+
+    // UTF-8 with unpaired surrogates replaced by '?', as the standard encoder does
+    private void encode(char[] cbuf, int off, int len) throws IOException {
+        reserve(3 * len);
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            final char c = cbuf[i];
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | c >> 6);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(cbuf[i + 1])) {
+                    final int cp = Character.toCodePoint(c, cbuf[++i]);
+                    bytes[size++] = (byte) (0xF0 | cp >> 18);
+                    bytes[size++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | cp & 0x3F);
+                } else {
+                    bytes[size++] = '?';
+                }
+            } else {
+                bytes[size++] = (byte) (0xE0 | c >> 12);
+                bytes[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void reserve(int length) throws IOException {
+        if (size + length > bytes.length) drain();
+    }
+
+    private void drain() throws IOException {
+        buffer.clear().limit(size);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        size = 0;
+    }
+
+    @Override
+    public void flush() throws IOException { drain(); }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            drain();
+        }
+    }
+}
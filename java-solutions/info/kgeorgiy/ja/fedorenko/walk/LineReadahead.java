@@ -0,0 +1,72 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// reads lines on its own thread into a bounded queue, so a slow producer such as a pipe and the hashing overlap
+// while memory stays bounded however long the input is; the reader belongs to that thread, which closes it,
+// since a close from any other thread would wait for the lock held by a readLine blocked on the producer
+/*package-private*/ class LineReadahead implements Closeable {
+    // a distinct instance, so that no input line can be mistaken for it
+    private static final String END = new String("");
+
+    private final BlockingQueue<String> lines;
+    private final Thread reader;
+    private volatile IOException failure;
+
+    LineReadahead(Reader source, int capacity) {
+        lines = new ArrayBlockingQueue<>(capacity);
+        reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(source)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lines.put(line);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                lines.put(END);
+            } catch (InterruptedException ignored) {
+                // closed
+            }
+        }, "walk-input");
+        // a read from stdin cannot be interrupted, so it must not keep the JVM alive
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // null at the end of input; whatever was written so far is flushed before waiting for more lines
+    public String next(Flushable out) throws IOException {
+        String line = lines.poll();
+        if (line == null) {
+            out.flush();
+            try {
+                line = lines.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for input");
+            }
+        }
+
+        if (line != END) return line;
+
+        // later calls see the end again
+        lines.offer(END);
+        if (failure != null) throw failure;
+        return null;
+    }
+
+    // never waits for the reader thread, which finishes on its own once it sees the interrupt or the end of input
+    @Override
+    public void close() { reader.interrupt(); }
+}
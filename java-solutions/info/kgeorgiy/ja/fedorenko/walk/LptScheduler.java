@@ -0,0 +1,113 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// longest-processing-time-first: the whole traversal is collected with sizes from its attributes,
+// workers take files largest first and results are still written in traversal order
+/*package-private*/ class LptScheduler implements FileSink {
+    private final Function<Path, byte[]> hasher;
+    private final WalkMetrics metrics;
+    private final int threads;
+    private final List<Job> jobs = new ArrayList<>();
+
+    // metrics may be null
+    LptScheduler(int threads, Function<Path, byte[]> hasher, WalkMetrics metrics) {
+        this.threads = threads;
+        this.hasher = hasher;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void file(String name, Path file, BasicFileAttributes attrs) { jobs.add(new Job(name, file, attrs.size())); }
+
+    @Override
+    public void error(String name) { jobs.add(new Job(name, null, -1)); }
+
+    public void run(OrderedHasher.ResultWriter out) throws IOException {
+        final Job[] order = jobs.toArray(new Job[0]);
+        Arrays.sort(order, Comparator.comparingLong((Job job) -> job.size).reversed());
+
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final long start = System.nanoTime();
+        try {
+            for (int i = 0; i < threads; i++) {
+                workers.execute(() -> {
+                    int j;
+                    while (!Thread.currentThread().isInterrupted() && (j = next.getAndIncrement()) < order.length) {
+                        order[j].run();
+                    }
+                });
+            }
+
+            for (Job job : jobs) {
+                out.write(job.name, Util.await(job.result, job.name));
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        report(start);
+    }
+
+    private void report(long start) {
+        long makespan = 0, critical = 0, work = 0;
+        for (Job job : jobs) {
+            makespan = Math.max(makespan, job.finishedAt - start);
+            critical = Math.max(critical, job.duration);
+            work += job.duration;
+        }
+
+        // no schedule can beat the longest single file or the total work spread evenly
+        final long bound = Math.max(critical, work / threads);
+        System.err.printf("LPT: %d files on %d threads, makespan %.1f ms, critical path %.1f ms, work/threads %.1f ms, makespan/bound %.3f%n",
+                jobs.size(), threads, makespan / 1e6, critical / 1e6, work / 1e6 / threads,
+                bound == 0 ? 1.0 : (double) makespan / bound);
+    }
+
+    private class Job implements Runnable {
+        private final String name;
+        private final Path file;
+        private final long size;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private long duration;
+        private long finishedAt;
+
+        Job(String name, Path file, long size) {
+            this.name = name;
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public void run() {
+            final long begin = System.nanoTime();
+            try {
+                final byte[] hash = file == null ? null
+                        : metrics == null ? hasher.apply(file) : metrics.timed(() -> hasher.apply(file));
+                finish(begin);
+                result.complete(hash);
+            } catch (RuntimeException | Error e) {
+                finish(begin);
+                result.completeExceptionally(e);
+            }
+        }
+
+        // timings are published to the writer thread by completing the result afterwards
+        private void finish(long begin) {
+            finishedAt = System.nanoTime();
+            duration = finishedAt - begin;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// layout: magic, varint-prefixed digest name, varint digest length,
+// records (varint path length, UTF-8 path, raw digest) in traversal order,
+// index of 8-byte record offsets sorted by unsigned path bytes,
+// trailer of 8-byte index offset, 8-byte record count and the index magic
+/*package-private*/ class Manifest implements Closeable {
+    static final byte[] MAGIC = "WALKMF01".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] INDEX_MAGIC = "WALKIDX1".getBytes(StandardCharsets.US_ASCII);
+    // records are read from fixed chunks mapped with this much overlap, so none is ever split between two
+    static final int MAX_RECORD = 1 << 20;
+    private static final long CHUNK = 1L << 30;
+    private static final int TRAILER = 16 + INDEX_MAGIC.length;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final String digestName;
+    private final int hashLength;
+    private final long indexOffset;
+    private final long count;
+
+    Manifest(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            if (size < MAGIC.length + TRAILER) throw malformed(file);
+
+            final ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+            readFully(trailer, size - TRAILER);
+            indexOffset = trailer.getLong(0);
+            count = trailer.getLong(8);
+            if (!trailer.slice(16, INDEX_MAGIC.length).equals(ByteBuffer.wrap(INDEX_MAGIC))
+                    || indexOffset < MAGIC.length || count < 0 || indexOffset + 8 * count != size - TRAILER) {
+                throw malformed(file);
+            }
+
+            chunks = new MappedByteBuffer[(int) ((indexOffset + CHUNK - 1) / CHUNK)];
+            final ByteBuffer header = chunk(0);
+            if (!header.slice(0, MAGIC.length).equals(ByteBuffer.wrap(MAGIC))) throw malformed(file);
+            header.position(MAGIC.length);
+            final byte[] name = new byte[readVarint(header)];
+            header.get(name);
+            digestName = new String(name, StandardCharsets.UTF_8);
+            hashLength = readVarint(header);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : malformed(file);
+        }
+    }
+
+    private static IOException malformed(Path file) { return new IOException("Malformed manifest " + file); }
+
+    public String digestName() { return digestName; }
+
+    public long count() { return count; }
+
+    // the chunk holding a record that starts at its first byte, mapped lazily
+    private ByteBuffer chunk(int index) throws IOException {
+        if (chunks[index] == null) {
+            final long start = index * CHUNK;
+            chunks[index] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK + MAX_RECORD, indexOffset - start));
+        }
+        return chunks[index].duplicate();
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+            if (shift > 21) throw new IllegalStateException("Varint is too long");
+        }
+    }
+
+    public Cursor sorted() { return new Cursor(); }
+
+    @Override
+    public void close() throws IOException { channel.close(); }
+
+    private Record record(long offset) throws IOException {
+        try {
+            final ByteBuffer record = chunk((int) (offset / CHUNK));
+            record.position((int) (offset % CHUNK));
+            final int length = readVarint(record);
+            return new Record(record.slice(record.position(), length), record.slice(record.position() + length, hashLength));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalStateException e) {
+            throw new IOException("Malformed manifest record at " + offset);
+        }
+    }
+
+    // walks the records in index order; path and hash are views into the mapping, valid until the next advance
+    class Cursor {
+        private final ByteBuffer index = ByteBuffer.allocateDirect(1 << 16).limit(0);
+        private final ByteBuffer probe = ByteBuffer.allocate(8);
+        // index of the record after the current one
+        private long next;
+        private ByteBuffer path;
+        private ByteBuffer hash;
+
+        public boolean advance() throws IOException {
+            if (next == count) return false;
+
+            if (!index.hasRemaining()) {
+                index.clear().limit((int) Math.min(index.capacity(), 8 * (count - next)));
+                readFully(index, indexOffset + 8 * next);
+                index.flip();
+            }
+            next++;
+
+            final Record record = record(index.getLong());
+            path = record.path;
+            hash = record.hash;
+            return true;
+        }
+
+        // moves past the records whose paths extend the current one, a contiguous run in index order,
+        // so they are found by a binary search without being read; returns how many were skipped
+        public long skipExtensions() throws IOException {
+            long lo = next, hi = count;
+            while (lo < hi) {
+                final long mid = (lo + hi) >>> 1;
+                probe.clear();
+                readFully(probe, indexOffset + 8 * mid);
+                final int i = record(probe.getLong(0)).path.mismatch(path);
+                if (i == -1 || i == path.remaining()) lo = mid + 1;
+                else hi = mid;
+            }
+
+            final long skipped = lo - next;
+            if (skipped > 0) {
+                next = lo;
+                index.limit(0);
+            }
+            return skipped;
+        }
+
+        public ByteBuffer path() { return path; }
+
+        public ByteBuffer hash() { return hash; }
+
+        public String name() { return StandardCharsets.UTF_8.decode(path.duplicate()).toString(); }
+    }
+
+    private record Record(ByteBuffer path, ByteBuffer hash) {}
+
+    // unsigned lexicographic order, the same one the writer sorts the index by
+    static int compare(ByteBuffer a, ByteBuffer b) {
+        final int i = a.mismatch(b);
+        if (i < 0) return 0;
+        if (i == a.remaining() || i == b.remaining()) return a.remaining() - b.remaining();
+        return Byte.toUnsignedInt(a.get(a.position() + i)) - Byte.toUnsignedInt(b.get(b.position() + i));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read == -1) throw new EOFException("Manifest is truncated");
+            position += read;
+        }
+    }
+}
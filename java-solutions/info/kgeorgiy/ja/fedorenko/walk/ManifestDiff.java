@@ -0,0 +1,93 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Objects;
+
+// merges the sorted indexes of two binary manifests: "+ path" added, "- path" removed, "~ path" changed;
+// with directory digests, everything under an unchanged directory is skipped without being read
+public class ManifestDiff {
+    private static final String USAGE = "Usage: ManifestDiff old new [output]";
+    private static final byte SEPARATOR = (byte) File.separatorChar;
+
+    private static void diff(Manifest before, Manifest after, Writer out) throws IOException {
+        final Manifest.Cursor a = before.sorted();
+        final Manifest.Cursor b = after.sorted();
+        long added = 0, removed = 0, changed = 0, pruned = 0;
+
+        boolean hasA = a.advance(), hasB = b.advance();
+        while (hasA || hasB) {
+            final int cmp = !hasA ? 1 : !hasB ? -1 : Manifest.compare(a.path(), b.path());
+            if (cmp < 0) {
+                line(out, '-', a.name());
+                removed++;
+                hasA = a.advance();
+            } else if (cmp > 0) {
+                line(out, '+', b.name());
+                added++;
+                hasB = b.advance();
+            } else {
+                // paths are compared and hashes checked as raw bytes, only differences are ever decoded
+                if (!a.hash().equals(b.hash())) {
+                    line(out, '~', b.name());
+                    changed++;
+                } else if (isDirectory(a)) {
+                    pruned += a.skipExtensions();
+                    b.skipExtensions();
+                }
+                hasA = a.advance();
+                hasB = b.advance();
+            }
+        }
+
+        System.err.printf("%d added, %d removed, %d changed of %d entries, %d skipped in equal directories%n",
+                added, removed, changed, after.count(), pruned);
+    }
+
+    private static boolean isDirectory(Manifest.Cursor cursor) {
+        final ByteBuffer path = cursor.path();
+        return path.hasRemaining() && path.get(path.limit() - 1) == SEPARATOR;
+    }
+
+    private static void line(Writer out, char kind, String name) throws IOException {
+        out.write(kind);
+        out.write(' ');
+        out.write(name);
+        out.write(System.lineSeparator());
+    }
+
+    public static void main(String[] args) {
+        if (args == null || args.length < 2 || args.length > 3) {
+            System.err.println("Incorrect argument count!");
+            System.err.println(USAGE);
+            return;
+        } else if (Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Incorrect arguments: files cannot be null!");
+            return;
+        }
+
+        try (Manifest before = new Manifest(Paths.get(args[0]));
+             Manifest after = new Manifest(Paths.get(args[1]));
+             Writer out = new BufferedWriter(args.length == 3
+                     ? new FileWriter(args[2], StandardCharsets.UTF_8)
+                     : new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+            if (!before.digestName().equals(after.digestName())) {
+                throw new IllegalArgumentException("Manifests use different digests: "
+                        + before.digestName() + " and " + after.digestName());
+            }
+            diff(before, after, out);
+        } catch (IOException e) {
+            System.err.println("IOException thrown: " + e.getMessage());
+        } catch (SecurityException e) {
+            System.err.println("Security violation occurred: " + e.getMessage());
+        } catch (InvalidPathException e) {
+            System.err.println("Invalid path: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong arguments were passed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// binary manifest: records with raw digests in traversal order, then an index of them sorted by path,
+// see Manifest for the layout; index entries are sorted in runs of bounded size spilled next to the output
+// and merged by finish, so memory stays constant however many files are written; a walk that fails
+// before finish leaves the file without a trailer, so readers reject it instead of taking it as complete
+/*package-private*/ class ManifestWriter implements OrderedHasher.ResultWriter, Closeable {
+    private static final long RUN_BYTES = 64L << 20;
+    // an Entry, its path array and the list slot beyond the path bytes themselves
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final int hashLength;
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private long runBytes;
+    private long count;
+    private long position;
+    private boolean sorted = true;
+
+    ManifestWriter(Path file, String digestName, int hashLength) throws IOException {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        this.hashLength = hashLength;
+
+        out.write(Manifest.MAGIC);
+        position = Manifest.MAGIC.length;
+        writeBytes(digestName.getBytes(StandardCharsets.UTF_8));
+        writeVarint(hashLength);
+    }
+
+    @Override
+    public void write(String name, byte[] hash) throws IOException {
+        final byte[] path = name.getBytes(StandardCharsets.UTF_8);
+        if (path.length + hashLength + 5 > Manifest.MAX_RECORD) throw new IOException("Path is too long for a manifest: " + name);
+
+        final Entry entry = new Entry(path, position);
+        if (!entries.isEmpty() && Arrays.compareUnsigned(entries.get(entries.size() - 1).path, path) > 0) sorted = false;
+        entries.add(entry);
+        count++;
+        runBytes += path.length + ENTRY_OVERHEAD;
+
+        writeBytes(path);
+        // an entry that could not be hashed is stored with the error hash, as in the text output
+        out.write(hash == null ? new byte[hashLength] : hash);
+        position += hashLength;
+        if (runBytes >= RUN_BYTES) spill();
+    }
+
+    private void sortEntries() {
+        // traversal order is often already sorted within a tree, then the sort is skipped entirely
+        if (!sorted) entries.sort(Comparator.comparing(Entry::path, Arrays::compareUnsigned));
+    }
+
+    private void spill() throws IOException {
+        sortEntries();
+        final Path directory = file.toAbsolutePath().getParent();
+        final Path run = Files.createTempFile(directory, file.getFileName() + ".", ".run");
+        runs.add(run);
+        try (DataOutputStream runOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE))) {
+            for (Entry entry : entries) {
+                runOut.writeInt(entry.path.length);
+                runOut.write(entry.path);
+                runOut.writeLong(entry.offset);
+            }
+        }
+        entries.clear();
+        runBytes = 0;
+        sorted = true;
+    }
+
+    // k-way merge of the spilled runs, each read sequentially
+    private void merge() throws IOException {
+        final PriorityQueue<Run> heads = new PriorityQueue<>(Comparator.comparing((Run run) -> run.path, Arrays::compareUnsigned));
+        final List<Run> open = new ArrayList<>();
+        try {
+            for (Path path : runs) {
+                final Run run = new Run(path);
+                open.add(run);
+                if (run.advance()) heads.add(run);
+            }
+            while (!heads.isEmpty()) {
+                final Run run = heads.poll();
+                out.writeLong(run.offset);
+                if (run.advance()) heads.add(run);
+            }
+        } finally {
+            for (Run run : open) {
+                run.in.close();
+            }
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeVarint(bytes.length);
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+            position++;
+        }
+        out.write(value);
+        position++;
+    }
+
+    // writes the index and the trailer, once every record is written
+    public void finish() throws IOException {
+        final long indexOffset = position;
+        if (runs.isEmpty()) {
+            sortEntries();
+            for (Entry entry : entries) {
+                out.writeLong(entry.offset);
+            }
+        } else {
+            spill();
+            merge();
+        }
+        out.writeLong(indexOffset);
+        out.writeLong(count);
+        out.write(Manifest.INDEX_MAGIC);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private record Entry(byte[] path, long offset) {}
+
+    private static class Run {
+        private final DataInputStream in;
+        private byte[] path;
+        private long offset;
+
+        Run(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), RUN_BUFFER_SIZE));
+        }
+
+        boolean advance() throws IOException {
+            final int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            path = in.readNBytes(length);
+            offset = in.readLong();
+            return true;
+        }
+    }
+}
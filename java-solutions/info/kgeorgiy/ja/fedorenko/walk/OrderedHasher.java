@@ -0,0 +1,125 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+// hashes submitted files on a worker pool and hands results to the writer in submission order
+/*package-private*/ class OrderedHasher implements FileSink, AutoCloseable {
+    private static final int WINDOW_PER_THREAD = 16;
+
+    private final Function<Path, byte[]> hasher;
+    private final ResultWriter out;
+    private final ExecutorService workers;
+    private final Queue<Pending> pending = new ArrayDeque<>();
+    private final int window;
+    private final WalkMetrics metrics;
+
+    // metrics may be null
+    OrderedHasher(int threads, Function<Path, byte[]> hasher, ResultWriter out, WalkMetrics metrics) {
+        this.hasher = hasher;
+        this.metrics = metrics;
+        this.out = out;
+        this.workers = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        this.window = threads * WINDOW_PER_THREAD;
+    }
+
+    @Override
+    public void file(String name, Path file, BasicFileAttributes attrs) throws IOException {
+        if (workers == null) {
+            try {
+                out.write(name, hash(file));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+
+        enqueue(name, workers.submit(() -> hash(file)));
+    }
+
+    private byte[] hash(Path file) {
+        return metrics == null ? hasher.apply(file) : metrics.timed(() -> hasher.apply(file));
+    }
+
+    @Override
+    public void error(String name) throws IOException {
+        if (workers == null) {
+            out.write(name, null);
+            return;
+        }
+
+        enqueue(name, CompletableFuture.completedFuture(null));
+    }
+
+    // directory boundaries are queued with the files, so the writer sees them in traversal order
+    @Override
+    public void enterDirectory(String name) throws IOException {
+        if (workers == null) out.enterDirectory(name);
+        else enqueue(new Pending(name, null, Kind.ENTER));
+    }
+
+    @Override
+    public void leaveDirectory(String name, boolean failed) throws IOException {
+        if (workers == null) out.leaveDirectory(name, failed);
+        else enqueue(new Pending(name, null, failed ? Kind.FAILED : Kind.LEAVE));
+    }
+
+    private void enqueue(String name, Future<byte[]> hash) throws IOException {
+        enqueue(new Pending(name, hash, Kind.FILE));
+    }
+
+    private void enqueue(Pending entry) throws IOException {
+        while (pending.size() >= window) {
+            writeHead();
+        }
+
+        pending.add(entry);
+        if (metrics != null) metrics.queueDepth(pending.size());
+    }
+
+    private void writeHead() throws IOException {
+        final Pending head = pending.poll();
+        if (metrics != null) metrics.queueDepth(pending.size());
+
+        switch (head.kind) {
+            case FILE -> out.write(head.name, Util.await(head.hash, head.name));
+            case ENTER -> out.enterDirectory(head.name);
+            case LEAVE, FAILED -> out.leaveDirectory(head.name, head.kind == Kind.FAILED);
+        }
+    }
+
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeHead();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (workers != null) workers.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    interface ResultWriter {
+        // hash is null for an entry that could not be hashed
+        void write(String name, byte[] hash) throws IOException;
+
+        default void enterDirectory(String name) throws IOException {}
+
+        default void leaveDirectory(String name, boolean failed) throws IOException {}
+    }
+
+    private enum Kind { FILE, ENTER, LEAVE, FAILED }
+
+    private record Pending(String name, Future<byte[]> hash, Kind kind) {}
+}
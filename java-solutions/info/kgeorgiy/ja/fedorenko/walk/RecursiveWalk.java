@@ -1,88 +1,259 @@
 package info.kgeorgiy.ja.fedorenko.walk;
 
 import java.io.*;
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.security.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public class RecursiveWalk {
-    private static final int HASH_SIZE = 64;
+    private static final String USAGE = "Usage: RecursiveWalk [-threads N] [-cache file] [-algo SHA-256|SHA-1|CRC32C|XXH64] [-tree blockSize [-blocks file] | -async depth] [-binary] [-archives] [-links] [-dirs] [-jmx] [-progress seconds] [-dup | -lpt | -watch [-debounce ms] | -checkpoint file] input output";
 
-    private static BigInteger getHashBInt(Path inFile) {
-        BigInteger hash;
+    private static void walk(String fileName, FileSink sink) throws IOException {
+        final Path start;
+        try {
+            start = Paths.get(fileName);
+        } catch (InvalidPathException e) {
+            WalkMetrics.failure(e);
+            sink.error(fileName);
+            return;
+        }
 
-        try (FileInputStream in = new FileInputStream(inFile.toFile())) {
-            int readCh;
-            byte[] buffer = new byte[1024];
-            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        // traversal errors are reported through the visitor, so any IOException here comes from the sink
+        try {
+            Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                    new SinkVisitor(fileName, start, sink));
+        } catch (SecurityException e) {
+            WalkMetrics.failure(e);
+            sink.error(fileName);
+        }
+    }
+
+    // inputs may be null when the input lines are not needed afterwards, checkpoint when not resumable
+    private static void walkAll(BufferedReader in, FileSink sink, List<String> inputs, Checkpoint checkpoint) throws IOException {
+        String inFile;
 
-            while ((readCh = in.read(buffer)) != -1) {
-                sha.update(buffer, 0, readCh);
+        for (long line = 0; (inFile = in.readLine()) != null; line++) {
+            if (checkpoint == null) {
+                walk(inFile, sink);
+            } else if (!checkpoint.skipLine(line)) {
+                walk(inFile, checkpoint.track(line, sink));
             }
-            hash = new BigInteger(1, sha.digest());
-        } catch (NoSuchAlgorithmException e) {
-            throw new AssertionError("Digest: " + e.getMessage());
-        } catch (IOException | SecurityException | FileSystemNotFoundException | UnsupportedOperationException e) {
-            hash = BigInteger.ZERO;
+            if (inputs != null) inputs.add(inFile);
         }
-
-        return hash;
     }
 
-    private static Map<String, BigInteger> walk(String fileName) {
-        Map<String, BigInteger> fileMap = new HashMap<>();
-
-        try {
-            Path file = Paths.get(fileName);
+    private static void watch(List<String> inputs, long debounce, FileSink sink, OrderedHasher hasher, HashLineWriter out, int hashLength)
+            throws IOException, InterruptedException {
+        try (DirectoryWatcher watcher = new DirectoryWatcher(debounce, new DirectoryWatcher.Listener() {
+            @Override
+            public void changed(Path path) throws IOException { walk(path.toString(), sink); }
 
-            if (Files.isDirectory(file)) {
-                try (Stream<Path> entries = Files.list(file)) {
-                    entries.forEach(path -> fileMap.putAll(walk(path.toString())));
+            @Override
+            public void deleted(Path path) throws IOException {
+                // tombstones bypass the hasher, so everything submitted before must be written first
+                hasher.flush();
+                out.writeTombstone(hashLength, path.toString());
+            }
 
-                    return fileMap;
+            @Override
+            public void settled() throws IOException {
+                hasher.flush();
+                out.flush();
+            }
+        })) {
+            for (String input : inputs) {
+                try {
+                    watcher.watch(Paths.get(input));
+                } catch (InvalidPathException | IOException e) {
+                    System.err.println("Cannot watch " + input + ": " + e.getMessage());
                 }
-            } else return Map.of(fileName, getHashBInt(file));
-        } catch (IOException | InvalidPathException | SecurityException e) {
-            return Map.of(fileName, BigInteger.ZERO);
+            }
+
+            out.flush();
+            watcher.run();
         }
     }
 
+    private static Function<Path, byte[]> withCache(HashCache cache, Function<Path, byte[]> hash) {
+        return cache == null ? hash : cache.wrap(hash);
+    }
+
     public static void main(String[] args) {
-        if (args == null || args.length != 2) {
+        if (args == null) {
             System.err.println("Incorrect argument count!");
             return;
-        } else if (args[0] == null || args[1] == null) {
+        } else if (Arrays.stream(args).anyMatch(Objects::isNull)) {
             System.err.println("Incorrect arguments: files cannot be null!");
             return;
         }
 
         try {
-            Path outPath = Paths.get(args[1]);
+            final WalkOptions options = new WalkOptions(args, Set.of("-threads", "-cache", "-algo", "-tree", "-blocks", "-debounce", "-checkpoint", "-progress", "-async"),
+                    Set.of("-dup", "-lpt", "-watch", "-binary", "-archives", "-links", "-dirs", "-jmx"));
+            if (options.positional().size() != 2) {
+                System.err.println("Incorrect argument count!");
+                System.err.println(USAGE);
+                return;
+            }
+
+            final String input = options.positional().get(0);
+            final String output = options.positional().get(1);
+            final int threads = options.getInt("-threads", 1);
+            final String cacheFile = options.get("-cache", null);
+            final DigestAlgorithm algorithm = DigestAlgorithm.forName(options.get("-algo", DigestAlgorithm.SHA_256.title()));
+            final long blockSize = options.getSize("-tree", 0);
+            final String blocksFile = options.get("-blocks", null);
+            if (blocksFile != null && blockSize == 0) throw new IllegalArgumentException("-blocks requires -tree");
+            // block lines are written along with file lines, which -dup does not produce
+            if (blocksFile != null && options.has("-dup")) throw new IllegalArgumentException("-blocks cannot be combined with -dup");
+            // tree digests differ from plain ones, so they must not share cache entries
+            final String digestName = algorithm.title() + (blockSize == 0 ? "" : " tree " + blockSize);
+            // each of these replaces the plain walk, so only one of them can run
+            if (Stream.of("-dup", "-lpt", "-watch").filter(options::has).count() > 1) {
+                throw new IllegalArgumentException("-dup, -lpt and -watch cannot be combined");
+            }
+            final String checkpointFile = options.get("-checkpoint", null);
+            if (checkpointFile != null && (options.has("-dup") || options.has("-lpt") || options.has("-watch"))) {
+                throw new IllegalArgumentException("-checkpoint only applies to the plain walk");
+            }
+            final boolean async = options.has("-async");
+            if (async && blockSize != 0) throw new IllegalArgumentException("-async cannot be combined with -tree");
+            final boolean binary = options.has("-binary");
+            if (binary && (options.has("-dup") || options.has("-watch") || checkpointFile != null)) {
+                throw new IllegalArgumentException("-binary cannot be combined with -dup, -watch or -checkpoint");
+            }
+            final boolean archives = options.has("-archives");
+            if (archives && (options.has("-dup") || options.has("-lpt") || checkpointFile != null)) {
+                throw new IllegalArgumentException("-archives cannot be combined with -dup, -lpt or -checkpoint");
+            }
+            // a watched file may change through any of its links, so a shared digest would go stale
+            final HardLinks links = options.has("-links") ? new HardLinks() : null;
+            if (links != null && options.has("-watch")) throw new IllegalArgumentException("-links cannot be combined with -watch");
+            final boolean dirs = options.has("-dirs");
+            if (dirs && (options.has("-dup") || options.has("-lpt") || options.has("-watch") || checkpointFile != null)) {
+                throw new IllegalArgumentException("-dirs cannot be combined with -dup, -lpt, -watch or -checkpoint");
+            }
+
+            Path outPath = Paths.get(output);
             if (outPath.getParent() != null) {
                 Files.createDirectories(outPath.getParent());
             }
 
-            try (BufferedReader in = new BufferedReader(new FileReader(args[0], StandardCharsets.UTF_8));
-                 BufferedWriter out = new BufferedWriter(new FileWriter(args[1], StandardCharsets.UTF_8))) {
-                String inFile;
+            final long progress = options.getInt("-progress", 0);
+            try (WalkMetrics metrics = options.has("-jmx") || progress > 0 ? new WalkMetrics(options.has("-jmx"), progress) : null;
+                 TreeHasher tree = blockSize == 0 ? null : new TreeHasher(algorithm, blockSize,
+                         options.getInt("-threads", Runtime.getRuntime().availableProcessors()),
+                         blocksFile == null ? null : Paths.get(blocksFile));
+                 AsyncHasher reader = async ? new AsyncHasher(algorithm, options.getInt("-async", 0), threads) : null;
+                 HashCache cache = cacheFile == null ? null : new HashCache(Paths.get(cacheFile), digestName);
+                 BufferedReader in = new BufferedReader(new FileReader(input, StandardCharsets.UTF_8));
+                 Checkpoint checkpoint = checkpointFile == null ? null : new Checkpoint(Paths.get(checkpointFile), outPath);
+                 ManifestWriter manifest = binary ? new ManifestWriter(outPath, digestName, algorithm.length()) : null;
+                 HashLineWriter out = binary ? null : checkpoint == null ? HashLineWriter.open(outPath) : checkpoint.writer()) {
+                final Function<Path, byte[]> cached = withCache(cache, tree != null ? tree::hash
+                        : reader != null ? reader::hash
+                        : file -> FileHasher.hash(file, algorithm));
+                final Function<Path, byte[]> hash = links == null ? cached : links.wrap(cached);
+
+                final byte[] errorHash = algorithm.errorHash();
+                final OrderedHasher.ResultWriter written = manifest != null ? manifest : (name, digest) -> {
+                    out.writeHash(digest == null ? errorHash : digest, name);
+                    if (checkpoint != null) checkpoint.written(name);
+                };
+                final OrderedHasher.ResultWriter lines = tree == null ? written : tree.writingBlocks(written);
 
-                while ((inFile = in.readLine()) != null) {
-                    for (Map.Entry<String, BigInteger> entry : walk(inFile).entrySet()) {
-                        out.write(String.format("%0" + HASH_SIZE + "x %s", entry.getValue(), entry.getKey()));
-                        out.newLine();
+                if (options.has("-dup")) {
+                    try (DuplicateFinder finder = new DuplicateFinder(algorithm, hash, threads, metrics)) {
+                        walkAll(in, finder, null, null);
+                        finder.report(out);
+                    }
+                } else if (options.has("-lpt")) {
+                    final LptScheduler scheduler = new LptScheduler(threads, hash, metrics);
+                    walkAll(in, scheduler, null, null);
+                    scheduler.run(lines);
+                    if (manifest != null) manifest.finish();
+                } else {
+                    final OrderedHasher.ResultWriter results = dirs ? new DirectoryDigests(algorithm, lines) : lines;
+                    try (OrderedHasher hasher = new OrderedHasher(threads, hash, results, metrics)) {
+                        final FileSink sink = archives ? new ArchiveSink(hasher) : hasher;
+                        if (options.has("-watch")) {
+                            final List<String> inputs = new ArrayList<>();
+                            walkAll(in, sink, inputs, null);
+                            watch(inputs, options.getInt("-debounce", 500), sink, hasher, out, algorithm.length());
+                        } else {
+                            walkAll(in, sink, null, checkpoint);
+                            hasher.flush();
+                            if (checkpoint != null) checkpoint.complete();
+                            if (manifest != null) manifest.finish();
+                        }
                     }
                 }
+
+                if (links != null) links.report();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
             System.err.println("IOException thrown: " + e.getMessage());
         } catch (SecurityException e) {
             System.err.println("Security violation occurred: " + e.getMessage());
         } catch (InvalidPathException e) {
             System.err.println("Invalid path: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong arguments were passed: " + e.getMessage());
+            System.err.println(USAGE);
+        }
+    }
+
+    private static class SinkVisitor extends SimpleFileVisitor<Path> {
+        private final String startName;
+        private final Path start;
+        private final FileSink sink;
+
+        SinkVisitor(String startName, Path start, FileSink sink) {
+            this.startName = startName;
+            this.start = start;
+            this.sink = sink;
+        }
+
+        // the input line is echoed verbatim, nested entries are named as resolved against it
+        private String name(Path file) { return file.equals(start) ? startName : file.toString(); }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            sink.enterDirectory(name(dir));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            sink.file(name(file), file, attrs);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+            WalkMetrics.failure(exc);
+            sink.error(name(file));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            if (exc != null) {
+                WalkMetrics.failure(exc);
+                sink.error(name(dir));
+            }
+            sink.leaveDirectory(name(dir), exc != null);
+            return FileVisitResult.CONTINUE;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// deterministic synthetic trees: file sizes are log-uniform between the bounds, so small files dominate the count
+// and large ones the volume; files fill directories perDir at a time, directories are numbered in base fanout
+// and nested depth levels deep
+/*package-private*/ class TreeGenerator {
+    private static final String SPEC_FILE = "shape.txt";
+    private static final Map<String, Shape> PRESETS = Map.of(
+            "tiny", new Shape("tiny", 20_000, 1, 4 << 10, 100, 16, 2),
+            "huge", new Shape("huge", 4, 32 << 20, 128 << 20, 4, 2, 0),
+            "deep", new Shape("deep", 2_000, 1 << 10, 64 << 10, 10, 2, 64),
+            "mixed", new Shape("mixed", 5_000, 1, 16 << 20, 50, 8, 3)
+    );
+
+    private TreeGenerator() {}
+
+    public static List<String> presets() { return List.of("tiny", "huge", "deep", "mixed"); }
+
+    // a preset name or "name:files:minSize:maxSize:perDir:fanout:depth", sizes may have a K, M or G suffix
+    public static Shape parse(String spec) {
+        final Shape preset = PRESETS.get(spec);
+        if (preset != null) return preset;
+
+        final String[] parts = spec.split(":");
+        if (parts.length != 7) throw new IllegalArgumentException("Unknown tree shape " + spec);
+        final Shape shape = new Shape(parts[0], Integer.parseInt(parts[1]),
+                WalkOptions.parseSize("minSize", parts[2]), WalkOptions.parseSize("maxSize", parts[3]),
+                Integer.parseInt(parts[4]), Integer.parseInt(parts[5]), Integer.parseInt(parts[6]));
+        if (shape.files <= 0 || shape.perDir <= 0 || shape.fanout < 2 || shape.depth < 0 || shape.minSize > shape.maxSize) {
+            throw new IllegalArgumentException("Invalid tree shape " + spec);
+        }
+        return shape;
+    }
+
+    // the tree goes to dir/tree and is reused when dir already holds one of the same shape
+    public static Tree generate(Path dir, Shape shape) throws IOException {
+        final Path root = dir.resolve("tree");
+        final Path specFile = dir.resolve(SPEC_FILE);
+        final String saved = Files.exists(specFile) ? Files.readString(specFile, StandardCharsets.UTF_8) : null;
+        final boolean exists = shape.toString().equals(saved);
+        if (saved != null && !exists) throw new IOException(dir + " holds a tree of another shape, remove it first");
+
+        // sizes must not depend on whether contents are generated
+        final Random sizes = new Random(shape.toString().hashCode());
+        final Random contents = new Random(sizes.nextLong());
+        final byte[] block = new byte[1 << 16];
+        final List<Path> files = new ArrayList<>(shape.files);
+        long bytes = 0;
+
+        for (int i = 0; i < shape.files; i++) {
+            final double logMin = Math.log(shape.minSize), logMax = Math.log(shape.maxSize);
+            final long size = Math.round(Math.exp(logMin + sizes.nextDouble() * (logMax - logMin)));
+            final Path file = directory(root, shape, i / shape.perDir).resolve("f" + i + ".bin");
+            files.add(file);
+            bytes += size;
+
+            if (!exists) {
+                Files.createDirectories(file.getParent());
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    for (long left = size; left > 0; left -= block.length) {
+                        contents.nextBytes(block);
+                        out.write(block, 0, (int) Math.min(block.length, left));
+                    }
+                }
+            }
+        }
+
+        // written last, so an interrupted generation is redone
+        if (!exists) Files.writeString(specFile, shape.toString(), StandardCharsets.UTF_8);
+        return new Tree(root, files, bytes);
+    }
+
+    private static Path directory(Path root, Shape shape, int index) {
+        final String[] levels = new String[shape.depth];
+        for (int level = shape.depth - 1; level >= 0; level--) {
+            levels[level] = "d" + index % shape.fanout;
+            index /= shape.fanout;
+        }
+        // whatever does not fit into the levels spreads over the root
+        return root.resolve(Path.of(index == 0 ? "." : "r" + index, levels)).normalize();
+    }
+
+    public record Shape(String name, int files, long minSize, long maxSize, int perDir, int fanout, int depth) {}
+
+    public record Tree(Path root, List<Path> files, long bytes) {}
+}
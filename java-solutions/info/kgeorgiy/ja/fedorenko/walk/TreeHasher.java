@@ -0,0 +1,196 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Merkle hashing: fixed-size blocks are digested in parallel as leaves H(0x00 || block),
+// then combined pairwise as H(0x01 || left || right), an odd node is carried to the next level
+/*package-private*/ class TreeHasher implements Closeable {
+    private static final byte[] LEAF = {0};
+    private static final byte[] NODE = {1};
+    // blocks of one file in flight per block thread, so a huge file never queues all of its blocks at once
+    private static final int WINDOW_PER_THREAD = 2;
+
+    private final DigestAlgorithm algorithm;
+    private final long blockSize;
+    // files are hashed on other pools, so waiting for blocks from here can never starve this one
+    private final ExecutorService blockWorkers;
+    private final HashLineWriter blocksOut;
+    private final int window;
+    // leaves of hashed files until their line is written, keyed by the very root array handed out
+    private final Map<byte[], Blocks> unwritten = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    TreeHasher(DigestAlgorithm algorithm, long blockSize, int threads, Path blocksFile) throws IOException {
+        this.algorithm = algorithm;
+        this.blockSize = blockSize;
+        this.blocksOut = blocksFile == null ? null : HashLineWriter.open(blocksFile);
+        this.blockWorkers = Executors.newFixedThreadPool(threads);
+        this.window = threads * WINDOW_PER_THREAD;
+    }
+
+    // null when the file cannot be read
+    public byte[] hash(Path file) {
+        if (file.getFileSystem() != FileSystems.getDefault()) {
+            try {
+                return hashStream(file);
+            } catch (IOException | SecurityException | UnsupportedOperationException e) {
+                WalkMetrics.failure(e);
+                return null;
+            }
+        }
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = ch.size();
+            // an empty file is a single empty leaf
+            final long count = Math.max(1, (size + blockSize - 1) / blockSize);
+            final Deque<Future<byte[]>> blocks = new ArrayDeque<>();
+            final List<byte[]> leaves = new ArrayList<>();
+            try {
+                for (long i = 0; i < count || !blocks.isEmpty(); ) {
+                    if (i < count && blocks.size() < window) {
+                        final long start = i++ * blockSize;
+                        final long len = Math.min(blockSize, size - start);
+
+                        blocks.add(blockWorkers.submit(() -> {
+                            final Digester leaf = algorithm.create();
+                            leaf.update(LEAF, 0, LEAF.length);
+                            FileHasher.digestRange(ch, leaf, start, len);
+                            return leaf.digest();
+                        }));
+                    } else {
+                        leaves.add(blocks.poll().get());
+                    }
+                }
+            } finally {
+                // blocks after a failed one are of no use, and the channel is about to be closed
+                blocks.forEach(block -> block.cancel(false));
+            }
+
+            return withBlocks(file, size, leaves);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            WalkMetrics.failure(e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException | SecurityException | FileSystemNotFoundException | UnsupportedOperationException e) {
+            WalkMetrics.failure(e);
+            return null;
+        }
+    }
+
+    // archive entries can only be streamed, so their leaves are digested one after another
+    private byte[] hashStream(Path file) throws IOException {
+        final List<byte[]> leaves = new ArrayList<>();
+        final byte[] buffer = new byte[1 << 16];
+        long size = 0;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            final Digester leaf = algorithm.create();
+            leaf.update(LEAF, 0, LEAF.length);
+            long filled = 0;
+            int read;
+            while ((read = in.read(buffer, 0, (int) Math.min(buffer.length, blockSize - filled))) != -1) {
+                leaf.update(buffer, 0, read);
+                WalkMetrics.read(read);
+                filled += read;
+                size += read;
+                if (filled == blockSize) {
+                    leaves.add(leaf.digest());
+                    leaf.update(LEAF, 0, LEAF.length);
+                    filled = 0;
+                }
+            }
+            if (filled > 0 || leaves.isEmpty()) leaves.add(leaf.digest());
+        }
+
+        return withBlocks(file, size, leaves);
+    }
+
+    private byte[] withBlocks(Path file, long size, List<byte[]> leaves) {
+        final byte[] root = root(leaves);
+        if (blocksOut != null) unwritten.put(root, new Blocks(file, size, leaves));
+        return root;
+    }
+
+    private byte[] root(List<byte[]> level) {
+        final Digester node = algorithm.create();
+
+        while (level.size() > 1) {
+            final List<byte[]> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                node.update(NODE, 0, NODE.length);
+                node.update(level.get(i), 0, level.get(i).length);
+                node.update(level.get(i + 1), 0, level.get(i + 1).length);
+                next.add(node.digest());
+            }
+            if (level.size() % 2 == 1) next.add(level.get(level.size() - 1));
+
+            level = next;
+        }
+
+        return level.get(0);
+    }
+
+    // writes the block lines of each file just before its own line, so they follow the same deterministic order;
+    // digests that did not come from this hasher, such as cached ones, have no blocks
+    public OrderedHasher.ResultWriter writingBlocks(OrderedHasher.ResultWriter out) {
+        if (blocksOut == null) return out;
+
+        return new OrderedHasher.ResultWriter() {
+            @Override
+            public void write(String name, byte[] hash) throws IOException {
+                final Blocks blocks = hash == null ? null : unwritten.remove(hash);
+                if (blocks != null) writeBlocks(blocks);
+                out.write(name, hash);
+            }
+
+            @Override
+            public void enterDirectory(String name) throws IOException { out.enterDirectory(name); }
+
+            @Override
+            public void leaveDirectory(String name, boolean failed) throws IOException { out.leaveDirectory(name, failed); }
+        };
+    }
+
+    // one "hash path#start-end" line per block
+    private void writeBlocks(Blocks blocks) throws IOException {
+        // an archive entry alone does not tell which archive it is in, its URI does
+        final Path file = blocks.file();
+        final String name = file.getFileSystem() == FileSystems.getDefault() ? file.toString() : file.toUri().toString();
+        for (int i = 0; i < blocks.leaves().size(); i++) {
+            final long start = i * blockSize;
+            final long end = Math.min(blocks.size(), start + blockSize);
+
+            blocksOut.writeHash(blocks.leaves().get(i), name + "#" + start + "-" + end);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        blockWorkers.shutdownNow();
+        if (blocksOut != null) blocksOut.close();
+    }
+
+    private record Blocks(Path file, long size, List<byte[]> leaves) {}
+}
@@ -0,0 +1,26 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/*package-private*/ class Util {
+    private Util() {}
+
+    // unwraps worker failures: I/O problems come back as IOException, everything else is rethrown as is
+    public static <T> T await(Future<T> future, String what) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing " + what);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException ue) throw ue.getCause();
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw new IOException("Hashing failed for " + what, e.getCause());
+        }
+    }
+}
@@ -1,58 +1,123 @@
 package info.kgeorgiy.ja.fedorenko.walk;
 
 import java.io.*;
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.InvalidPathException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
 
 public final class Walk {
-    private static final int HASH_SIZE = 64;
+    private static final String USAGE = "Usage: Walk [-algo SHA-256|SHA-1|CRC32C|XXH64] "
+            + "[-sample blockSize [-samples N] [-full glob|regex:pattern|@listFile]] [-readahead lines] input|- output|-";
+    // stands for stdin as the input and stdout as the output
+    private static final String STDIO = "-";
+    private static final int DEFAULT_READAHEAD = 1024;
+    private static final int DEFAULT_SAMPLES = 4;
+    // prefixes lines whose hash is a sampled fingerprint rather than a digest of the whole file
+    private static final char APPROXIMATE = '~';
 
-    private static BigInteger getHashBInt(String inFile) {
-        try (FileInputStream in = new FileInputStream(inFile)) {
-            int readCh;
-            byte[] buffer = new byte[1024];
-            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+    private static byte[] getHash(String inFile, DigestAlgorithm algorithm) {
+        try {
+            final byte[] hash = FileHasher.hash(Paths.get(inFile), algorithm);
+            return hash == null ? algorithm.errorHash() : hash;
+        } catch (InvalidPathException e) {
+            return algorithm.errorHash();
+        }
+    }
 
-            while ((readCh = in.read(buffer)) != -1) {
-                sha.update(buffer, 0, readCh);
-            }
+    // a sampled fingerprint prefixed as approximate, or the full hash when sampling would read the whole file anyway;
+    // a file that cannot be sampled is not read again in full, it gets the error hash at once
+    private static void writeSampled(HashLineWriter out, String inFile, DigestAlgorithm algorithm, long block, int samples)
+            throws IOException {
+        final byte[] fingerprint;
+        try {
+            fingerprint = FileHasher.fingerprint(Paths.get(inFile), algorithm, block, samples);
+        } catch (IOException | SecurityException | InvalidPathException | UnsupportedOperationException e) {
+            WalkMetrics.failure(e);
+            out.writeHash(algorithm.errorHash(), inFile);
+            return;
+        }
+
+        if (fingerprint == null) {
+            out.writeHash(getHash(inFile, algorithm), inFile);
+        } else {
+            out.write(APPROXIMATE);
+            out.writeHash(fingerprint, inFile);
+        }
+    }
+
+    // input lines that are always hashed in full: listed in a file, or matched by a path pattern
+    private static Predicate<String> promoted(String spec) throws IOException {
+        if (spec == null) return inFile -> false;
 
-            return new BigInteger(1, sha.digest());
-        } catch (NoSuchAlgorithmException e) {
-            throw new AssertionError(e.getMessage());
-        } catch (IOException | SecurityException e) {
-            return BigInteger.ZERO;
+        if (spec.startsWith("@")) {
+            final Set<String> listed = new HashSet<>(Files.readAllLines(Paths.get(spec.substring(1)), StandardCharsets.UTF_8));
+            return listed::contains;
         }
+
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(spec.contains(":") ? spec : "glob:" + spec);
+        return inFile -> {
+            try {
+                return matcher.matches(Paths.get(inFile));
+            } catch (InvalidPathException e) {
+                return false;
+            }
+        };
     }
 
     public static void main(String[] args) {
-        if (args == null || args.length != 2) {
+        if (args == null) {
             System.err.println("Incorrect argument count!");
             return;
-        } else if (args[0] == null || args[1] == null) {
+        } else if (Arrays.stream(args).anyMatch(Objects::isNull)) {
             System.err.println("Incorrect arguments: files cannot be null!");
             return;
         }
 
         try {
-            Path outPath = Paths.get(args[1]);
-            if (outPath.getParent() != null) {
+            final WalkOptions options = new WalkOptions(args, Set.of("-algo", "-sample", "-samples", "-full", "-readahead"), Set.of());
+            if (options.positional().size() != 2) {
+                System.err.println("Incorrect argument count!");
+                System.err.println(USAGE);
+                return;
+            }
+
+            final String input = options.positional().get(0);
+            final String output = options.positional().get(1);
+            final DigestAlgorithm algorithm = DigestAlgorithm.forName(options.get("-algo", DigestAlgorithm.SHA_256.title()));
+            final long block = options.getSize("-sample", 0);
+            final int samples = options.getInt("-samples", DEFAULT_SAMPLES);
+            if (block == 0 && (options.has("-samples") || options.has("-full"))) {
+                throw new IllegalArgumentException("-samples and -full require -sample");
+            }
+            final Predicate<String> full = promoted(options.get("-full", null));
+            final int readahead = options.getInt("-readahead", DEFAULT_READAHEAD);
+
+            Path outPath = STDIO.equals(output) ? null : Paths.get(output);
+            if (outPath != null && outPath.getParent() != null) {
                 Files.createDirectories(outPath.getParent());
             }
 
-            try (BufferedReader in = new BufferedReader(new FileReader(args[0], StandardCharsets.UTF_8));
-                 BufferedWriter out = new BufferedWriter(new FileWriter(args[1], StandardCharsets.UTF_8))) {
+            final Reader in = STDIO.equals(input)
+                    ? new InputStreamReader(new FilterInputStream(System.in) {
+                        @Override
+                        public void close() {}
+                    }, StandardCharsets.UTF_8)
+                    : new FileReader(input, StandardCharsets.UTF_8);
+            // from here on the input is closed by the thread reading it
+            try (LineReadahead lines = new LineReadahead(in, readahead);
+                 HashLineWriter out = outPath == null ? HashLineWriter.stdout() : HashLineWriter.open(outPath)) {
                 String inFile;
 
-                while ((inFile = in.readLine()) != null) {
-                    out.write(String.format("%0" + HASH_SIZE + "x %s", getHashBInt(inFile), inFile));
-                    out.newLine();
+                while ((inFile = lines.next(out)) != null) {
+                    if (block == 0 || full.test(inFile)) {
+                        out.writeHash(getHash(inFile, algorithm), inFile);
+                    } else {
+                        writeSampled(out, inFile, algorithm, block, samples);
+                    }
                 }
             }
         } catch (IOException e) {
@@ -61,6 +126,9 @@ public final class Walk {
             System.err.println("Security violation occurred: " + e.getMessage());
         } catch (InvalidPathException e) {
             System.err.println("Invalid path: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong arguments were passed: " + e.getMessage());
+            System.err.println(USAGE);
         }
     }
-}
\ No newline at end of file
+}
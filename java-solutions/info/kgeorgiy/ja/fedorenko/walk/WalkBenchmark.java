@@ -0,0 +1,157 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+public class WalkBenchmark {
+    private static final String USAGE = "Usage: WalkBenchmark [dir [iterations [algorithm]]]";
+    private static final long[] SIZE_CLASSES = {4L << 10, 256L << 10, 16L << 20, 256L << 20};
+    private static final int OUTPUT_LINES = 1 << 20;
+
+    private static Path createFile(Path dir, long size) throws IOException {
+        final Path file = dir.resolve("bench-" + size + ".bin");
+        if (Files.exists(file) && Files.size(file) == size) return file;
+
+        final Random random = new Random(size);
+        final byte[] block = new byte[1 << 16];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long left = size; left > 0; left -= block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, left));
+            }
+        }
+
+        return file;
+    }
+
+    private static double measure(Path file, long size, FileHasher.Strategy strategy, DigestAlgorithm algorithm, int iterations) throws IOException {
+        final Digester md = algorithm.create();
+        // enough repetitions per iteration for small files to be measurable
+        final long repeats = Math.max(1, (64L << 20) / size);
+
+        for (int i = 0; i < repeats; i++) {
+            FileHasher.digest(file, md, strategy);
+            md.reset();
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int it = 0; it < iterations; it++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < repeats; i++) {
+                FileHasher.digest(file, md, strategy);
+                md.reset();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return (double) size * repeats / (1 << 20) / (best / 1e9);
+    }
+
+    private static WritableByteChannel discarding() {
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                final int written = src.remaining();
+                src.position(src.limit());
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() { return true; }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    // time and bytes allocated by this thread per output line, best of the iterations after a warm-up pass
+    private static void measureOutput(String title, OutputTask task, int iterations) throws IOException {
+        final com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        task.run(OUTPUT_LINES);
+
+        long best = Long.MAX_VALUE, allocated = Long.MAX_VALUE;
+        for (int it = 0; it < iterations; it++) {
+            final long before = mx.getCurrentThreadAllocatedBytes();
+            final long start = System.nanoTime();
+            task.run(OUTPUT_LINES);
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = Math.min(allocated, mx.getCurrentThreadAllocatedBytes() - before);
+        }
+
+        System.out.printf("%-16s%12.1f ns/line%12.2f B/line%n", title, (double) best / OUTPUT_LINES, (double) allocated / OUTPUT_LINES);
+    }
+
+    private static void measureOutput(DigestAlgorithm algorithm, int iterations) throws IOException {
+        final byte[] hash = new byte[algorithm.length()];
+        new Random(0).nextBytes(hash);
+        final String[] names = new String[1024];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "/data/snapshot/dir" + i / 32 + (i % 7 == 0 ? "/\u0444\u0430\u0439\u043b-" : "/file-") + i + ".bin";
+        }
+
+        // the writer lives across passes, as it does for the whole of a walk
+        final Writer legacy = new BufferedWriter(Channels.newWriter(discarding(), StandardCharsets.UTF_8), 1 << 18);
+        measureOutput("String.format", lines -> {
+            for (int i = 0; i < lines; i++) {
+                legacy.write(String.format("%0" + 2 * hash.length + "x %s", new BigInteger(1, hash), names[i & 1023]));
+                legacy.write(System.lineSeparator());
+            }
+            legacy.flush();
+        }, iterations);
+
+        final HashLineWriter writer = new HashLineWriter(discarding());
+        measureOutput("HashLineWriter", lines -> {
+            for (int i = 0; i < lines; i++) {
+                writer.writeHash(hash, names[i & 1023]);
+            }
+            writer.flush();
+        }, iterations);
+    }
+
+    public static void main(String[] args) {
+        try {
+            final Path dir = args.length > 0 ? Paths.get(args[0]) : Files.createTempDirectory("walk-bench");
+            final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+            final DigestAlgorithm algorithm = DigestAlgorithm.forName(args.length > 2 ? args[2] : "SHA-256");
+            Files.createDirectories(dir);
+
+            System.out.printf("%12s", "size");
+            for (FileHasher.Strategy strategy : FileHasher.Strategy.values()) {
+                System.out.printf("%12s", strategy);
+            }
+            System.out.printf("%12s%n", "chosen");
+
+            for (long size : SIZE_CLASSES) {
+                final Path file = createFile(dir, size);
+
+                System.out.printf("%12d", size);
+                for (FileHasher.Strategy strategy : FileHasher.Strategy.values()) {
+                    System.out.printf("%12.1f", measure(file, size, strategy, algorithm, iterations));
+                }
+                System.out.printf("%12s%n", FileHasher.choose(size));
+            }
+            System.out.println("(" + algorithm.title() + " MB/s, best of " + iterations + " iterations)");
+
+            measureOutput(algorithm, iterations);
+        } catch (IOException e) {
+            System.err.println("IOException thrown: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong arguments were passed: " + e.getMessage());
+            System.err.println(USAGE);
+        }
+    }
+
+    @FunctionalInterface
+    private interface OutputTask {
+        void run(int lines) throws IOException;
+    }
+}
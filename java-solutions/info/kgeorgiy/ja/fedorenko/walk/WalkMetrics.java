@@ -0,0 +1,192 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import javax.management.*;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// counters and a latency histogram with power-of-two buckets, published through JMX and an optional stderr line
+/*package-private*/ class WalkMetrics implements WalkMetricsMXBean, Closeable {
+    private static final String NAME = "info.kgeorgiy.ja.fedorenko.walk:type=WalkMetrics";
+    // hashing turns failures into error hashes, so it reports their types here when a walk is measured
+    private static volatile WalkMetrics active;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+    private final long start = System.nanoTime();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final AtomicLongArray latency = new AtomicLongArray(Long.SIZE);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final ObjectName name;
+    private final ScheduledExecutorService ticker;
+    private volatile int queueDepth;
+    private long lastFiles;
+    private long lastBytes;
+    private long lastTick = start;
+
+    WalkMetrics(boolean jmx, long progressSeconds) {
+        if (cpuTime && !threads.isThreadCpuTimeEnabled()) threads.setThreadCpuTimeEnabled(true);
+        name = jmx ? register() : null;
+
+        if (progressSeconds > 0) {
+            ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "walk-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(this::progress, progressSeconds, progressSeconds, TimeUnit.SECONDS);
+        } else {
+            ticker = null;
+        }
+        active = this;
+    }
+
+    private ObjectName register() {
+        try {
+            final ObjectName objectName = new ObjectName(NAME);
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            // a previous walk in the same JVM may still be registered
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            System.err.println("Cannot register metrics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static void failure(Throwable e) {
+        final WalkMetrics metrics = active;
+        if (metrics != null) metrics.errors.computeIfAbsent(e.getClass().getSimpleName(), type -> new LongAdder()).increment();
+    }
+
+    // bytes actually read by a hash function, so that digests served by the cache or shared between links add nothing
+    public static void read(long count) {
+        final WalkMetrics metrics = active;
+        if (metrics != null && count > 0) metrics.bytes.add(count);
+    }
+
+    // a digest given without reading the file
+    public static void reused() {
+        final WalkMetrics metrics = active;
+        if (metrics != null) metrics.reused.increment();
+    }
+
+    // runs a hash on the calling thread, recording its latency and CPU share; a file counts as hashed
+    // only when it could be read, its failure is counted by the hash function itself
+    public byte[] timed(Supplier<byte[]> hash) {
+        final long cpuBefore = cpuTime ? threads.getCurrentThreadCpuTime() : 0;
+        final long before = System.nanoTime();
+        byte[] result = null;
+        try {
+            result = hash.get();
+            return result;
+        } finally {
+            final long wall = System.nanoTime() - before;
+            latency.incrementAndGet(Long.SIZE - 1 - Long.numberOfLeadingZeros(Math.max(1, wall)));
+            wallNanos.add(wall);
+            if (cpuTime) cpuNanos.add(threads.getCurrentThreadCpuTime() - cpuBefore);
+            if (result != null) files.increment();
+        }
+    }
+
+    public void queueDepth(int depth) { queueDepth = depth; }
+
+    private synchronized void progress() {
+        final long now = System.nanoTime(), f = files.sum(), b = bytes.sum();
+        final double seconds = (now - lastTick) / 1e9;
+        System.err.printf("%d files (%.0f/s), %.1f MB read (%.1f MB/s), %d reused, queue %d, hash p50 %.2f ms p99 %.2f ms, cpu %.0f%%, errors %d%n",
+                f, (f - lastFiles) / seconds, b / 1e6, (b - lastBytes) / 1e6 / seconds, reused.sum(), queueDepth,
+                getHashLatencyP50Millis(), getHashLatencyP99Millis(), 100 * getCpuShare(), getErrors());
+        lastFiles = f;
+        lastBytes = b;
+        lastTick = now;
+    }
+
+    // upper bound of the bucket holding the given share of hashes
+    private double percentileMillis(double share) {
+        long total = 0;
+        for (int i = 0; i < latency.length(); i++) {
+            total += latency.get(i);
+        }
+
+        long seen = 0;
+        for (int i = 0; i < latency.length(); i++) {
+            seen += latency.get(i);
+            if (seen > 0 && seen >= share * total) return Math.scalb(2.0, i) / 1e6;
+        }
+        return 0;
+    }
+
+    @Override
+    public long getFilesHashed() { return files.sum(); }
+
+    @Override
+    public long getBytesHashed() { return bytes.sum(); }
+
+    @Override
+    public long getDigestsReused() { return reused.sum(); }
+
+    @Override
+    public double getFilesPerSecond() { return files.sum() / ((System.nanoTime() - start) / 1e9); }
+
+    @Override
+    public double getBytesPerSecond() { return bytes.sum() / ((System.nanoTime() - start) / 1e9); }
+
+    @Override
+    public int getQueueDepth() { return queueDepth; }
+
+    @Override
+    public long getErrors() { return errors.values().stream().mapToLong(LongAdder::sum).sum(); }
+
+    @Override
+    public Map<String, Long> getErrorsByType() {
+        final Map<String, Long> byType = new TreeMap<>();
+        errors.forEach((type, count) -> byType.put(type, count.sum()));
+        return byType;
+    }
+
+    @Override
+    public double getHashLatencyP50Millis() { return percentileMillis(0.5); }
+
+    @Override
+    public double getHashLatencyP99Millis() { return percentileMillis(0.99); }
+
+    @Override
+    public double getHashLatencyMaxMillis() { return percentileMillis(1); }
+
+    @Override
+    public double getCpuShare() {
+        final long wall = wallNanos.sum();
+        return wall == 0 ? 0 : (double) cpuNanos.sum() / wall;
+    }
+
+    @Override
+    public void close() {
+        active = null;
+        if (ticker != null) {
+            ticker.shutdownNow();
+            progress();
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ignored) {
+                // already gone
+            }
+        }
+    }
+}
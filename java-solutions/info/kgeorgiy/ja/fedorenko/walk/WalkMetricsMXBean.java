@@ -0,0 +1,34 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.util.Map;
+
+// live view of a running walk; rates are averaged since the walk started
+public interface WalkMetricsMXBean {
+    long getFilesHashed();
+
+    // bytes read from files; digests from the cache or of another name of the same file read none
+    long getBytesHashed();
+
+    // files hashed without being read
+    long getDigestsReused();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    // results waiting to be written in traversal order
+    int getQueueDepth();
+
+    long getErrors();
+
+    Map<String, Long> getErrorsByType();
+
+    double getHashLatencyP50Millis();
+
+    double getHashLatencyP99Millis();
+
+    double getHashLatencyMaxMillis();
+
+    // CPU time of hashing threads over their wall time: near 1 when CPU-bound, low when waiting for I/O
+    double getCpuShare();
+}
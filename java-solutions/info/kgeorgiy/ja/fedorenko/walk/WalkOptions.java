@@ -0,0 +1,59 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.util.*;
+
+/*package-private*/ class WalkOptions {
+    private final Map<String, String> named = new HashMap<>();
+    private final Set<String> switches = new HashSet<>();
+    private final List<String> positional = new ArrayList<>();
+
+    // valued options consume the next argument, switches do not; a lone "-" is positional
+    WalkOptions(String[] args, Set<String> valued, Set<String> flags) {
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+
+            if (arg.length() < 2 || arg.charAt(0) != '-') {
+                positional.add(arg);
+            } else if (flags.contains(arg)) {
+                switches.add(arg);
+            } else if (valued.contains(arg)) {
+                if (++i == args.length) throw new IllegalArgumentException("Missing value for " + arg);
+                named.put(arg, args[i]);
+            } else throw new IllegalArgumentException("Unknown option " + arg);
+        }
+    }
+
+    public List<String> positional() { return positional; }
+
+    public boolean has(String name) { return switches.contains(name) || named.containsKey(name); }
+
+    public String get(String name, String otherwise) { return named.getOrDefault(name, otherwise); }
+
+    // accepts an optional K, M or G binary suffix
+    public long getSize(String name, long otherwise) {
+        final String value = named.get(name);
+        return value == null ? otherwise : parseSize(name, value);
+    }
+
+    public static long parseSize(String name, String value) {
+        if (value.isEmpty()) throw new IllegalArgumentException("Missing value for " + name);
+        final int shift = switch (Character.toUpperCase(value.charAt(value.length() - 1))) {
+            case 'K' -> 10;
+            case 'M' -> 20;
+            case 'G' -> 30;
+            default -> 0;
+        };
+        final long parsed = Long.parseLong(shift == 0 ? value : value.substring(0, value.length() - 1));
+        if (parsed <= 0) throw new IllegalArgumentException(name + " must be positive");
+        return parsed << shift;
+    }
+
+    public int getInt(String name, int otherwise) {
+        final String value = named.get(name);
+        if (value == null) return otherwise;
+
+        final int parsed = Integer.parseInt(value);
+        if (parsed <= 0) throw new IllegalArgumentException(name + " must be positive");
+        return parsed;
+    }
+}
@@ -0,0 +1,177 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// end-to-end throughput of Walk and RecursiveWalk modes over generated trees, see TreeGenerator for shapes
+public class WalkSuite {
+    private static final String USAGE = "Usage: WalkSuite [-dir dir] [-iterations N] [-threads N] [shape ...]";
+
+    private static List<Mode> modes(int threads) {
+        final String t = Integer.toString(threads);
+        return List.of(
+                new Mode("Walk", Walk::main, true),
+                new Mode("Walk -sample 64K", Walk::main, true, "-sample", "64K"),
+                new Mode("RecursiveWalk", RecursiveWalk::main, false),
+                new Mode("-threads " + t, RecursiveWalk::main, false, "-threads", t),
+                new Mode("-algo XXH64", RecursiveWalk::main, false, "-threads", t, "-algo", "XXH64"),
+                new Mode("-algo CRC32C", RecursiveWalk::main, false, "-threads", t, "-algo", "CRC32C"),
+                new Mode("-tree 1M", RecursiveWalk::main, false, "-threads", t, "-tree", "1M"),
+                new Mode("-async 4", RecursiveWalk::main, false, "-threads", t, "-async", "4"),
+                new Mode("-cache (warm)", RecursiveWalk::main, false, "-threads", t, "-cache", "@cache"),
+                new Mode("-lpt", RecursiveWalk::main, false, "-threads", t, "-lpt"),
+                new Mode("-dup", RecursiveWalk::main, false, "-threads", t, "-dup"),
+                new Mode("-binary", RecursiveWalk::main, false, "-threads", t, "-binary"),
+                new Mode("-checkpoint", RecursiveWalk::main, false, "-threads", t, "-checkpoint", "@checkpoint"),
+                new Mode("-archives", RecursiveWalk::main, false, "-threads", t, "-archives"),
+                new Mode("-links", RecursiveWalk::main, false, "-threads", t, "-links"),
+                new Mode("-dirs", RecursiveWalk::main, false, "-threads", t, "-dirs")
+        );
+    }
+
+    private static void run(Path dir, TreeGenerator.Tree tree, List<Mode> modes, int iterations) throws IOException {
+        final Path files = dir.resolve("files.txt");
+        final Path roots = dir.resolve("roots.txt");
+        Files.write(files, tree.files().stream().map(Path::toString).toList(), StandardCharsets.UTF_8);
+        Files.writeString(roots, tree.root() + System.lineSeparator(), StandardCharsets.UTF_8);
+        final Path output = dir.resolve("output");
+
+        System.out.printf("%-16s%14s%14s%14s%14s%n", "mode", "files/s", "MB/s", "alloc MB/s", "alloc B/file");
+        for (Mode mode : modes) {
+            final String[] args = Stream.concat(
+                    Arrays.stream(mode.options).map(arg -> arg.startsWith("@") ? dir.resolve(arg.substring(1)).toString() : arg),
+                    Stream.of((mode.listsFiles ? files : roots).toString(), output.toString())
+            ).toArray(String[]::new);
+
+            // the first pass warms up the JIT, page cache and, for -cache, the cache itself
+            if (!runQuietly(mode, args, output)) {
+                System.out.printf("%-16s%14s%n", mode.title, "failed");
+                continue;
+            }
+
+            long best = Long.MAX_VALUE, allocated = Long.MAX_VALUE;
+            for (int it = 0; it < iterations; it++) {
+                final AllocationSampler sampler = new AllocationSampler();
+                try {
+                    final long start = System.nanoTime();
+                    runQuietly(mode, args, output);
+                    best = Math.min(best, System.nanoTime() - start);
+                } finally {
+                    sampler.close();
+                }
+                allocated = Math.min(allocated, sampler.allocated());
+            }
+
+            final double seconds = best / 1e9;
+            System.out.printf("%-16s%14.0f%14.1f%14.1f%14.0f%n", mode.title, tree.files().size() / seconds,
+                    tree.bytes() / seconds / (1 << 20), allocated / seconds / (1 << 20), (double) allocated / tree.files().size());
+        }
+    }
+
+    // the walkers report problems to stderr only, so a missing output is taken as a failure
+    private static boolean runQuietly(Mode mode, String[] args, Path output) throws IOException {
+        Files.deleteIfExists(output);
+        final PrintStream err = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            mode.main.accept(args);
+        } finally {
+            System.setErr(err);
+        }
+        return Files.exists(output);
+    }
+
+    public static void main(String[] args) {
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Incorrect arguments: cannot be null!");
+            return;
+        }
+
+        try {
+            final WalkOptions options = new WalkOptions(args, Set.of("-dir", "-iterations", "-threads"), Set.of());
+            final Path dir = options.has("-dir") ? Paths.get(options.get("-dir", null)) : Files.createTempDirectory("walk-suite");
+            final int iterations = options.getInt("-iterations", 3);
+            final int threads = options.getInt("-threads", Runtime.getRuntime().availableProcessors());
+            final List<TreeGenerator.Shape> shapes = (options.positional().isEmpty() ? TreeGenerator.presets() : options.positional())
+                    .stream().map(TreeGenerator::parse).toList();
+
+            for (TreeGenerator.Shape shape : shapes) {
+                final Path shapeDir = dir.resolve(shape.name());
+                final TreeGenerator.Tree tree = TreeGenerator.generate(shapeDir, shape);
+                System.out.printf("%n%s: %d files, %.1f MB, %s%n", shape.name(), tree.files().size(), tree.bytes() / (double) (1 << 20), shape);
+                run(shapeDir, tree, modes(threads), iterations);
+            }
+            System.out.println("(best of " + iterations + " iterations, " + threads + " threads, trees in " + dir + ")");
+        } catch (IOException e) {
+            System.err.println("IOException thrown: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong arguments were passed: " + e.getMessage());
+            System.err.println(USAGE + ", shapes: " + String.join(", ", TreeGenerator.presets())
+                    + " or name:files:minSize:maxSize:perDir:fanout:depth");
+        }
+    }
+
+    private record Mode(String title, Consumer<String[]> main, boolean listsFiles, String... options) {}
+
+    // sums what every thread allocated while it ran: worker pools are polled, since their threads are gone
+    // once a walk returns, so the tail of a thread that ends between two samples is not counted
+    private static class AllocationSampler {
+        private static final long PERIOD_MILLIS = 10;
+
+        private final com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final Map<Long, Long> baseline = new HashMap<>();
+        private final Map<Long, Long> latest = new HashMap<>();
+        private final Thread sampler;
+
+        AllocationSampler() {
+            sample(baseline);
+            sampler = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        sample(latest);
+                        Thread.sleep(PERIOD_MILLIS);
+                    }
+                } catch (InterruptedException ignored) {
+                    // closed
+                }
+            });
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+
+        private synchronized void sample(Map<Long, Long> into) {
+            final long[] ids = mx.getAllThreadIds();
+            final long[] bytes = mx.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] >= 0) into.merge(ids[i], bytes[i], Math::max);
+            }
+        }
+
+        public synchronized long allocated() {
+            long total = 0;
+            for (Map.Entry<Long, Long> entry : latest.entrySet()) {
+                if (entry.getKey() != sampler.getId()) total += entry.getValue() - baseline.getOrDefault(entry.getKey(), 0L);
+            }
+            return total;
+        }
+
+        public void close() {
+            sampler.interrupt();
+            try {
+                sampler.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sample(latest);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package info.kgeorgiy.ja.fedorenko.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// streaming XXH64 with seed 0, digest bytes are big-endian as printed by xxhsum
+/*package-private*/ final class XXHash64 implements Digester {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    private final ByteBuffer pending = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+    private long v1, v2, v3, v4;
+    private long total;
+
+    XXHash64() { reset(); }
+
+    @Override
+    public void reset() {
+        v1 = P1 + P2;
+        v2 = P2;
+        v3 = 0;
+        v4 = -P1;
+        total = 0;
+        pending.clear();
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) { update(ByteBuffer.wrap(bytes, offset, length)); }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        final ByteBuffer src = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        total += src.remaining();
+        buffer.position(buffer.limit());
+
+        if (pending.position() > 0) {
+            while (pending.hasRemaining() && src.hasRemaining()) {
+                pending.put(src.get());
+            }
+            if (pending.hasRemaining()) return;
+
+            pending.flip();
+            stripe(pending);
+            pending.clear();
+        }
+
+        while (src.remaining() >= STRIPE) {
+            stripe(src);
+        }
+        pending.put(src);
+    }
+
+    private void stripe(ByteBuffer src) {
+        v1 = round(v1, src.getLong());
+        v2 = round(v2, src.getLong());
+        v3 = round(v3, src.getLong());
+        v4 = round(v4, src.getLong());
+    }
+
+    @Override
+    public byte[] digest() {
+        long h;
+        if (total >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = P5;
+        }
+        h += total;
+
+        pending.flip();
+        while (pending.remaining() >= Long.BYTES) {
+            h ^= round(0, pending.getLong());
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (pending.remaining() >= Integer.BYTES) {
+            h ^= (pending.getInt() & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+        }
+        while (pending.hasRemaining()) {
+            h ^= (pending.get() & 0xFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+
+        reset();
+        return ByteBuffer.allocate(Long.BYTES).putLong(h).array();
+    }
+
+    @Override
+    public int length() { return Long.BYTES; }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long merge(long acc, long value) {
+        return (acc ^ round(0, value)) * P1 + P4;
+    }
+}